@@ -0,0 +1,16 @@
+package app.revanced.integrations.patches.ads;
+
+enum BlockResult {
+    UNBLOCKED(false, "Unblocked"),
+    IGNORED(false, "Ignored"),
+    DEFINED(true, "Blocked"),
+    CUSTOM(true, "Custom");
+
+    final boolean filter;
+    final String message;
+
+    BlockResult(boolean filter, String message) {
+        this.filter = filter;
+        this.message = message;
+    }
+}
@@ -0,0 +1,187 @@
+package app.revanced.integrations.patches.ads;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Multi-pattern byte sequence matcher (Aho-Corasick automaton), for searching protobuf buffers.
+ * <p>
+ * Same as {@link PatternMatcher}, but over bytes.
+ * A search finds the patterns starting in the given window of the buffer, even if they end after it,
+ * and works with both heap and direct buffers.
+ */
+final class BytePatternMatcher {
+    /**
+     * Matcher without any patterns.
+     */
+    static final BytePatternMatcher EMPTY = new Builder().build();
+
+    /**
+     * Symbol class of each unsigned byte value. Class 0 is used for bytes not found in any pattern.
+     */
+    private final int[] byteClasses;
+    private final int width;
+    private final int[] transitions;
+    private final long[] outputs;
+    private final long[] patternOutputs;
+    private final int[] depths;
+    private final int[] failures;
+
+    private BytePatternMatcher(int[] byteClasses, int width, PatternMatcher.Automaton automaton) {
+        this.byteClasses = byteClasses;
+        this.width = width;
+        this.transitions = automaton.transitions;
+        this.outputs = automaton.outputs;
+        this.patternOutputs = automaton.patternOutputs;
+        this.depths = automaton.depths;
+        this.failures = automaton.failures;
+    }
+
+    /**
+     * @return If this matcher has no patterns, and any search will never match.
+     */
+    boolean isEmpty() {
+        return outputs.length == 1;
+    }
+
+    /**
+     * Search the remaining bytes of the buffer, from its position to its limit.
+     * The position of the buffer is not changed.
+     *
+     * @return Bitmask of the rules with a pattern found, or zero if nothing matched.
+     */
+    long match(final ByteBuffer buffer) {
+        return match(buffer, Integer.MAX_VALUE, 0);
+    }
+
+    /**
+     * Search the patterns starting in the first {@code maxLength} remaining bytes of the buffer.
+     * A pattern starting in the window is found even if it ends after it.
+     * The position of the buffer is not changed.
+     *
+     * @param buffer    Buffer to search, from its position.
+     * @param maxLength Maximum number of bytes where a pattern can start.
+     * @param stopMask  Rules that end the search as soon as one of them is found.
+     * @return Bitmask of the rules with a pattern found in the searched bytes.
+     */
+    long match(final ByteBuffer buffer, final int maxLength, final long stopMask) {
+        if (buffer == null) return 0;
+
+        final int start = buffer.position();
+        final int limit = buffer.limit();
+        return match(buffer, start, limit - start <= maxLength ? limit : start + maxLength, stopMask);
+    }
+
+    /**
+     * Search the patterns starting in the window {@code [start, end)} of the buffer, using absolute buffer indexes.
+     * The window is clamped to the position and limit of the buffer.
+     * The position of the buffer is not changed.
+     *
+     * @return Bitmask of the rules with a pattern found starting in the window.
+     */
+    long match(final ByteBuffer buffer, int start, int end, final long stopMask) {
+        if (buffer == null || isEmpty()) return 0;
+
+        final int limit = buffer.limit();
+        start = Math.max(start, buffer.position());
+        end = Math.min(end, limit);
+
+        final int[] byteClasses = this.byteClasses;
+        final int[] transitions = this.transitions;
+        final long[] outputs = this.outputs;
+        final int width = this.width;
+        // Direct or read only buffers use absolute gets, which do not change the position.
+        final byte[] array = buffer.hasArray() ? buffer.array() : null;
+        final int offset = array != null ? buffer.arrayOffset() : 0;
+
+        long matches = 0;
+        int state = 0;
+        int i = start;
+        if (array != null) {
+            for (int arrayEnd = end + offset; i + offset < arrayEnd; i++) {
+                state = transitions[state * width + byteClasses[array[i + offset] & 0xFF]];
+                matches |= outputs[state];
+                if ((matches & stopMask) != 0) return matches;
+            }
+        } else {
+            for (; i < end; i++) {
+                state = transitions[state * width + byteClasses[buffer.get(i) & 0xFF]];
+                matches |= outputs[state];
+                if ((matches & stopMask) != 0) return matches;
+            }
+        }
+
+        // Continue past the window while the current pattern prefix started in it,
+        // and only count the patterns that started in it.
+        final int[] depths = this.depths;
+        for (; i < limit && depths[state] > i - end; i++) {
+            final byte b = array != null ? array[i + offset] : buffer.get(i);
+            state = transitions[state * width + byteClasses[b & 0xFF]];
+            for (int found = state; depths[found] > i - end + 1; found = failures[found]) {
+                matches |= patternOutputs[found];
+            }
+            if ((matches & stopMask) != 0) break;
+        }
+
+        return matches;
+    }
+
+    static final class Builder {
+        private final ArrayList<byte[]> patterns = new ArrayList<>();
+        private final ArrayList<Long> rules = new ArrayList<>();
+
+        /**
+         * Add patterns for a rule. Empty and null patterns are ignored.
+         *
+         * @param rule     The rule index, reported if any of the patterns is found.
+         * @param patterns The byte sequences to search for.
+         */
+        Builder add(final int rule, final byte[]... patterns) {
+            if (rule < 0 || rule >= PatternMatcher.MAX_RULES) {
+                throw new IllegalArgumentException("Rule index out of range: " + rule);
+            }
+
+            for (byte[] pattern : patterns) {
+                if (pattern == null || pattern.length == 0) continue;
+                this.patterns.add(pattern);
+                this.rules.add(1L << rule);
+            }
+            return this;
+        }
+
+        /**
+         * Add string patterns for a rule, encoded as UTF-8.
+         */
+        Builder add(final int rule, final String... patterns) {
+            for (String pattern : patterns) {
+                if (pattern != null) add(rule, pattern.getBytes(StandardCharsets.UTF_8));
+            }
+            return this;
+        }
+
+        BytePatternMatcher build() {
+            // Map the byte values used by the patterns to dense symbol classes.
+            int[] byteClasses = new int[256];
+            for (byte[] pattern : patterns) {
+                for (byte b : pattern) byteClasses[b & 0xFF] = -1;
+            }
+            int width = 1;
+            for (int i = 0; i < byteClasses.length; i++) {
+                if (byteClasses[i] == -1) byteClasses[i] = width++;
+            }
+
+            ArrayList<int[]> sequences = new ArrayList<>(patterns.size());
+            for (byte[] pattern : patterns) {
+                int[] sequence = new int[pattern.length];
+                for (int i = 0; i < sequence.length; i++) {
+                    sequence[i] = byteClasses[pattern[i] & 0xFF];
+                }
+                sequences.add(sequence);
+            }
+            PatternMatcher.Automaton automaton = PatternMatcher.Automaton.build(sequences, rules, width);
+
+            return new BytePatternMatcher(byteClasses, width, automaton);
+        }
+    }
+}
@@ -20,7 +20,7 @@ final class CommentsPatch extends Filter {
     }
 
     @Override
-    boolean filter(String path, String _identifier) {
-        return pathRegister.contains(path);
+    BlockResult filter(long pathMatches, long _identifierMatches) {
+        return pathRegister.isMatched(pathMatches) ? BlockResult.DEFINED : BlockResult.UNBLOCKED;
     }
 }
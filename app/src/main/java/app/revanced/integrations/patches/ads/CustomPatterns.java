@@ -0,0 +1,176 @@
+package app.revanced.integrations.patches.ads;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+
+/**
+ * The user custom filter, parsed from its comma separated setting value.
+ * <p>
+ * Entries are trimmed, and empty and duplicate entries are dropped.
+ * An entry is a substring of the component path, except for these special characters:
+ * <ul>
+ *     <li>{@code ^} at the start: the path must start with the entry.</li>
+ *     <li>{@code $} at the end: the path must end with the entry.</li>
+ *     <li>{@code *}: any number of any characters.</li>
+ * </ul>
+ * Plain substring entries are compiled into the path matcher together with the built-in rules.
+ * The other entries are found by their longest literal part with a separate matcher,
+ * and only the candidates are then checked completely,
+ * so the cost of a path search does not depend on the number of entries.
+ */
+final class CustomPatterns {
+    static final CustomPatterns EMPTY = parse("");
+
+    /**
+     * The setting value the patterns were parsed from.
+     */
+    final String source;
+    /**
+     * Entries without special characters.
+     */
+    final String[] literals;
+    /**
+     * Entries with anchors or wildcards.
+     */
+    private final Pattern[] patterns;
+    /**
+     * Finds the longest literal part of the entries with anchors or wildcards.
+     * The rule of each entry is its index modulo {@link PatternMatcher#MAX_RULES}.
+     */
+    private final PatternMatcher candidates;
+
+    private CustomPatterns(String source, String[] literals, Pattern[] patterns, PatternMatcher candidates) {
+        this.source = source;
+        this.literals = literals;
+        this.patterns = patterns;
+        this.candidates = candidates;
+    }
+
+    static CustomPatterns parse(final String source) {
+        var entries = new LinkedHashSet<String>();
+        if (source != null) {
+            for (String entry : source.split(",")) {
+                entry = entry.trim();
+                if (!entry.isEmpty()) entries.add(entry);
+            }
+        }
+
+        var literals = new ArrayList<String>();
+        var patterns = new ArrayList<Pattern>();
+        var builder = new PatternMatcher.Builder();
+        for (String entry : entries) {
+            var pattern = Pattern.parse(entry);
+            if (pattern == null) {
+                literals.add(entry);
+            } else if (pattern.key != null) {
+                builder.add(patterns.size() % PatternMatcher.MAX_RULES, pattern.key);
+                patterns.add(pattern);
+            }
+            // Entries without any literal part, such as "*", would block every component and are ignored.
+        }
+
+        return new CustomPatterns(source,
+                literals.toArray(new String[0]),
+                patterns.toArray(new Pattern[0]),
+                builder.build());
+    }
+
+    /**
+     * @return If there are entries with anchors or wildcards, which {@link #matchesPatterns(CharSequence)} checks.
+     */
+    boolean hasPatterns() {
+        return patterns.length != 0;
+    }
+
+    /**
+     * Check the entries with anchors or wildcards. Plain substring entries are not checked.
+     */
+    boolean matchesPatterns(final CharSequence text) {
+        long found = candidates.match(text);
+        while (found != 0) {
+            final int rule = Long.numberOfTrailingZeros(found);
+            found &= found - 1;
+            for (int i = rule; i < patterns.length; i += PatternMatcher.MAX_RULES) {
+                if (patterns[i].matches(text)) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check all entries directly.
+     */
+    boolean matches(final CharSequence text) {
+        for (String literal : literals) {
+            if (BlockRule.indexOf(text, literal, 0) >= 0) return true;
+        }
+        return hasPatterns() && matchesPatterns(text);
+    }
+
+    private static final class Pattern {
+        final boolean anchoredStart;
+        final boolean anchoredEnd;
+        /**
+         * Literal parts between the wildcards. The first and last can be empty.
+         */
+        final String[] parts;
+        /**
+         * Longest literal part, or null if there is none.
+         */
+        final String key;
+
+        private Pattern(boolean anchoredStart, boolean anchoredEnd, String[] parts) {
+            this.anchoredStart = anchoredStart;
+            this.anchoredEnd = anchoredEnd;
+            this.parts = parts;
+
+            String key = null;
+            for (String part : parts) {
+                if (!part.isEmpty() && (key == null || part.length() > key.length())) key = part;
+            }
+            this.key = key;
+        }
+
+        /**
+         * @return The entry as a pattern, or null if it has no special characters.
+         */
+        static Pattern parse(String entry) {
+            final boolean anchoredStart = entry.startsWith("^");
+            final boolean anchoredEnd = entry.length() > (anchoredStart ? 1 : 0) && entry.endsWith("$");
+            if (!anchoredStart && !anchoredEnd && entry.indexOf('*') < 0) return null;
+
+            entry = entry.substring(anchoredStart ? 1 : 0, entry.length() - (anchoredEnd ? 1 : 0));
+            return new Pattern(anchoredStart, anchoredEnd, entry.split("\\*", -1));
+        }
+
+        boolean matches(final CharSequence text) {
+            final int last = parts.length - 1;
+            int position = 0;
+            for (int i = 0; i <= last; i++) {
+                final String part = parts[i];
+                if (i == 0 && anchoredStart) {
+                    if (!regionMatches(text, 0, part)) return false;
+                    if (i == last && anchoredEnd && text.length() != part.length()) return false;
+                    position = part.length();
+                } else if (i == last && anchoredEnd) {
+                    final int start = text.length() - part.length();
+                    return start >= position && regionMatches(text, start, part);
+                } else if (!part.isEmpty()) {
+                    // Matching each part as early as possible never prevents a later part from matching.
+                    final int start = BlockRule.indexOf(text, part, position);
+                    if (start < 0) return false;
+                    position = start + part.length();
+                }
+            }
+            return true;
+        }
+
+        private static boolean regionMatches(final CharSequence text, final int start, final String part) {
+            if (start < 0 || start + part.length() > text.length()) return false;
+            for (int i = 0; i < part.length(); i++) {
+                if (text.charAt(start + i) != part.charAt(i)) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -2,207 +2,389 @@ package app.revanced.integrations.patches.ads;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
-import app.revanced.integrations.settings.SettingsEnum;
 import app.revanced.integrations.patches.utils.PatchStatus;
+import app.revanced.integrations.patches.video.FeedPrefetcher;
+import app.revanced.integrations.settings.SettingsEnum;
+import app.revanced.integrations.utils.LogHelper;
 
 
 public class ExtendedLithoFilterPatch {
-    private static final List<String> excludedBlockingList = List.of(
+    private static final String[] excludedBlockingList = {
         "home_video_with_context",
         "related_video_with_context",
         "search_video_with_context"
-    );
-    private static final List<String> whiteList = List.of(
+    };
+    private static final String[] whiteList = {
         "library_recent_shelf"
-    );
-    private static final int excludedBlockingListSize = excludedBlockingList.size() - 1;
+    };
+
+    private static final String ACTION_BUTTON_PATH = "CellType|ScrollableContainerType|ContainerType|ContainerType|video_action_button";
+
+    /**
+     * Number of bytes from the start of the buffer searched for action buttons and menu items.
+     */
+    private static final int BUFFER_WINDOW_LENGTH = 2000;
+
+    // Buffer rule indexes, and their bits in the matcher results.
+    private static final int ACTION_BUTTONS_RULE = 0;
+    private static final int MENU_ITEMS_RULE = 1;
+    private static final int MIX_PLAYLISTS_RULE = 2;
+    private static final int STORE_BUTTON_RULE = 3;
+    private static final long ACTION_BUTTONS = 1L << ACTION_BUTTONS_RULE;
+    private static final long MENU_ITEMS = 1L << MENU_ITEMS_RULE;
+    private static final long MIX_PLAYLISTS = 1L << MIX_PLAYLISTS_RULE;
+    private static final long STORE_BUTTON = 1L << STORE_BUTTON_RULE;
+
+    // Path rule indexes. The buffer rules use the same indexes for the paths they are searched in.
+    private static final int WHITELIST_RULE = 4;
+    private static final int GENERAL_RULE = 5;
+    private static final int FEED_SURVEY_RULE = 6;
+    private static final int SUGGESTIONS_RULE = 7;
+    private static final int SUGGESTIONS_EXCLUDED_RULE = 8;
+    private static final int REEL_CHANNEL_BAR_RULE = 9;
+    private static final int REEL_CHANNEL_BAR_ITEMS_RULE = 10;
+    private static final long WHITELIST = 1L << WHITELIST_RULE;
+    private static final long GENERAL = 1L << GENERAL_RULE;
+    private static final long FEED_SURVEY = 1L << FEED_SURVEY_RULE;
+    private static final long SUGGESTIONS = 1L << SUGGESTIONS_RULE;
+    private static final long SUGGESTIONS_EXCLUDED = 1L << SUGGESTIONS_EXCLUDED_RULE;
+    private static final long REEL_CHANNEL_BAR = 1L << REEL_CHANNEL_BAR_RULE;
+    private static final long REEL_CHANNEL_BAR_ITEMS = 1L << REEL_CHANNEL_BAR_ITEMS_RULE;
 
+    /**
+     * Rules of the current settings. Replaced as a whole when a filter setting changes.
+     */
+    private static volatile RuleSnapshot ruleSnapshot;
+
+    private static final AtomicLong snapshotsBuilt = new AtomicLong();
+    private static final AtomicLong filterCalls = new AtomicLong();
+
+    /**
+     * Filter a component in the stages {@link FilterStage#IGNORE}, {@link FilterStage#PATH}
+     * and {@link FilterStage#BUFFER}, each of which can end the filtering.
+     * The ignore and path stages share one search of the path, which is counted for the path stage.
+     */
     public static boolean InflatedLithoView(String value, ByteBuffer buffer) {
         if (value == null || value.isEmpty()) return false;
-        for (String whiteListItem : whiteList) {
-            if (value.contains(whiteListItem)) return false;
-        }
 
-        List<byte[]> actionButtonsBlockList = new ArrayList<>();
-        List<byte[]> menuItemBlockList = new ArrayList<>();
-        List<byte[]> genericBufferList = new ArrayList<>();
-        List<byte[]> bufferBlockList = new ArrayList<>();
-        List<String> generalBlockList = new ArrayList<>();
-        int count = 0;
+        final RuleSnapshot rules = getRuleSnapshot();
+        filterCalls.incrementAndGet();
+        final boolean trace = rules.trace;
+        long stageNanos = trace ? System.nanoTime() : 0;
 
-        if (SettingsEnum.HIDE_SHARE_BUTTON.getBoolean()) {
-            actionButtonsBlockList.add("yt_outline_share".getBytes());
-        }
-        if (SettingsEnum.HIDE_LIVE_CHAT_BUTTON.getBoolean()) {
-            actionButtonsBlockList.add("yt_outline_message_bubble_overlap".getBytes());
-        }
-        if (SettingsEnum.HIDE_REPORT_BUTTON.getBoolean()) {
-            actionButtonsBlockList.add("yt_outline_flag".getBytes());
-        }
-        if (SettingsEnum.HIDE_CREATE_SHORT_BUTTON.getBoolean()) {
-            actionButtonsBlockList.add("yt_outline_youtube_shorts_plus".getBytes());
-        }
-        if (SettingsEnum.HIDE_THANKS_BUTTON.getBoolean()) {
-            actionButtonsBlockList.add("yt_outline_dollar_sign_heart".getBytes());
-        }
-        if (SettingsEnum.HIDE_CREATE_CLIP_BUTTON.getBoolean()) {
-            actionButtonsBlockList.add("yt_outline_scissors".getBytes());
+        if (rules.prefetch && startsWithAny(value, excludedBlockingList)) {
+            FeedPrefetcher.onFeedVideoComponent(buffer);
         }
 
-        if (value.contains("CellType|ScrollableContainerType|ContainerType|ContainerType|video_action_button")) {
-            for (byte[] b: actionButtonsBlockList) {
-                int bufferIndex = indexOf(buffer.array(), b);
-                if (bufferIndex > 0 && bufferIndex < 2000) count++;
-            }
+        // The search ends as soon as the component is whitelisted.
+        final long matches = rules.path.match(value, WHITELIST);
+        if ((matches & WHITELIST) != 0) {
+            if (trace) FilterStage.IGNORE.record(stageNanos, true);
+            return false;
         }
 
-        if (SettingsEnum.HIDE_MIX_PLAYLISTS.getBoolean()) {
-            genericBufferList.add("mix-watch".getBytes());
-            genericBufferList.add("&list=".getBytes());
-            genericBufferList.add("rellist".getBytes());
-        }
+        final boolean pathBlocked = (matches & GENERAL) != 0
+                || (matches & FEED_SURVEY) != 0
+                || ((matches & SUGGESTIONS) != 0 && (matches & SUGGESTIONS_EXCLUDED) == 0)
+                || ((matches & REEL_CHANNEL_BAR) != 0 && (matches & REEL_CHANNEL_BAR_ITEMS) != 0);
+        if (trace) stageNanos = FilterStage.PATH.record(stageNanos, pathBlocked);
+        if (pathBlocked) return true;
 
-        if (containsAnyString(value)) {
-            for (byte[] b: genericBufferList) {
-                if (indexOf(buffer.array(), b) > 0) count++;
-            }
-        }
+        // Buttons and menu items are always near the start of the buffer.
+        // Unlike the former indexOf(...) > 0 checks, a pattern at the very start of the buffer also matches.
+        long gates = matches & rules.windowedBufferRules;
+        boolean bufferBlocked = gates != 0
+                && (rules.windowedBuffer.match(buffer, BUFFER_WINDOW_LENGTH, gates) & gates) != 0;
 
-        if (SettingsEnum.HIDE_CAPTIONS_MENU.getBoolean()) {
-            menuItemBlockList.add("_caption".getBytes());
-            menuItemBlockList.add("_closed".getBytes());
-        }
-        if (SettingsEnum.HIDE_LOOP_MENU.getBoolean()) {
-            menuItemBlockList.add("_1_".getBytes());
-        }
-        if (SettingsEnum.HIDE_AMBIENT_MENU.getBoolean()) {
-            menuItemBlockList.add("_screen".getBytes());
-        }
-        if (SettingsEnum.HIDE_REPORT_MENU.getBoolean()) {
-            menuItemBlockList.add("_flag".getBytes());
-        }
-        if (SettingsEnum.HIDE_HELP_MENU.getBoolean()) {
-            menuItemBlockList.add("_question".getBytes());
-        }
-        if (SettingsEnum.HIDE_MORE_MENU.getBoolean()) {
-            menuItemBlockList.add("_info".getBytes());
-        }
-        if (SettingsEnum.HIDE_LISTENING_CONTROLS_MENU.getBoolean()) {
-            menuItemBlockList.add("_adjust".getBytes());
-        }
-        if (SettingsEnum.HIDE_AUDIO_TRACK_MENU.getBoolean()) {
-            menuItemBlockList.add("_person".getBytes());
-        }
-        if (SettingsEnum.HIDE_WATCH_IN_VR_MENU.getBoolean()) {
-            menuItemBlockList.add("_vr".getBytes());
-        }
-        if (SettingsEnum.HIDE_NERDS_MENU.getBoolean()) {
-            menuItemBlockList.add("_statistic".getBytes());
+        gates = matches & rules.bufferRules;
+        bufferBlocked = bufferBlocked || (gates != 0
+                && (rules.buffer.match(buffer, Integer.MAX_VALUE, gates) & gates) != 0);
+        if (trace) FilterStage.BUFFER.record(stageNanos, true);
+
+        return bufferBlocked;
+    }
+
+    private static boolean startsWithAny(final String value, final String[] prefixes) {
+        for (String prefix : prefixes) {
+            if (value.startsWith(prefix)) return true;
         }
-        if (SettingsEnum.HIDE_YT_MUSIC_MENU.getBoolean()) {
-            menuItemBlockList.add("_open".getBytes());
+        return false;
+    }
+
+    /**
+     * @return Number of rule snapshots built since the app started.
+     */
+    public static long getSnapshotsBuilt() {
+        return snapshotsBuilt.get();
+    }
+
+    /**
+     * @return Number of filter calls served from a rule snapshot since the app started.
+     */
+    public static long getFilterCalls() {
+        return filterCalls.get();
+    }
+
+    /**
+     * @return The rules of the current settings, rebuilt only if a filter setting changed.
+     */
+    private static RuleSnapshot getRuleSnapshot() {
+        RuleSnapshot rules = ruleSnapshot;
+        final int changeCount = SettingsEnum.getChangeCount();
+        if (rules != null && rules.settingsChangeCount == changeCount) return rules;
+
+        if (rules != null && rules.isCurrent()) {
+            // The change was to a setting unrelated to the filters.
+            rules = new RuleSnapshot(changeCount, rules);
+        } else {
+            rules = new RuleSnapshot(changeCount);
+            LogHelper.info(ExtendedLithoFilterPatch.class, "Built rule snapshot " + snapshotsBuilt.incrementAndGet()
+                    + " after " + filterCalls.get() + " filter calls");
         }
+        ruleSnapshot = rules;
+        return rules;
+    }
+
+    /**
+     * Reads the settings the rules are built from, and records them with the values read.
+     */
+    private static final class SettingsReader {
+        private final List<SettingsEnum> settings = new ArrayList<>();
+        private long state;
 
-        if (value.contains("overflow_menu_item")) {
-            for (byte[] b: menuItemBlockList) {
-                int bufferIndex = indexOf(buffer.array(), b);
-                if (bufferIndex > 0 && bufferIndex < 2000) count++;
+        boolean isEnabled(final SettingsEnum setting) {
+            if (settings.size() == Long.SIZE) {
+                throw new IllegalStateException("More than " + Long.SIZE + " filter settings");
             }
+            final boolean enabled = setting.getBoolean();
+            if (enabled) state |= 1L << settings.size();
+            settings.add(setting);
+            return enabled;
         }
+    }
 
-        if (SettingsEnum.HIDE_LIKE_BUTTON.getBoolean()) {
-            generalBlockList.add("ContainerType|ContainerType|like_button");
-        }
+    /**
+     * Immutable rules built from the setting values at the time of creation.
+     */
+    private static final class RuleSnapshot {
+        final int settingsChangeCount;
+        /**
+         * Settings read while building the rules, and a bitmask of the values read.
+         * The rules are the same as long as these settings keep their values.
+         */
+        final SettingsEnum[] settings;
+        final long settingsState;
 
-        if (SettingsEnum.HIDE_DISLIKE_BUTTON.getBoolean()) {
-            generalBlockList.add("ContainerType|ContainerType|dislike_button");
-            generalBlockList.add("ContainerType|ContainerType|segmented_like_dislike_button");
-        }
+        /**
+         * Whitelist and path rules, and the paths the buffer rules are searched in.
+         */
+        final PatternMatcher path;
+        /**
+         * Action button and menu item rules, searched only at the start of the buffer.
+         */
+        final BytePatternMatcher windowedBuffer;
+        final long windowedBufferRules;
+        /**
+         * Mix playlist and store button rules, searched in the whole buffer.
+         */
+        final BytePatternMatcher buffer;
+        final long bufferRules;
+        /**
+         * If the stages are timed, see {@link FilterStage}.
+         */
+        final boolean trace;
+        /**
+         * If feed video components are handed to {@link FeedPrefetcher}.
+         */
+        final boolean prefetch;
 
-        if (SettingsEnum.HIDE_DOWNLOAD_BUTTON.getBoolean()) {
-            generalBlockList.add("download_button");
+        /**
+         * Same rules as a previous snapshot, for a change count where no filter setting changed.
+         */
+        RuleSnapshot(final int settingsChangeCount, final RuleSnapshot rules) {
+            this.settingsChangeCount = settingsChangeCount;
+            this.settings = rules.settings;
+            this.settingsState = rules.settingsState;
+            this.path = rules.path;
+            this.windowedBuffer = rules.windowedBuffer;
+            this.windowedBufferRules = rules.windowedBufferRules;
+            this.buffer = rules.buffer;
+            this.bufferRules = rules.bufferRules;
+            this.trace = rules.trace;
+            this.prefetch = rules.prefetch;
         }
 
-        if (SettingsEnum.HIDE_PLAYLIST_BUTTON.getBoolean()) {
-            generalBlockList.add("save_to_playlist_button");
-        }
+        RuleSnapshot(final int settingsChangeCount) {
+            this.settingsChangeCount = settingsChangeCount;
+            final SettingsReader reader = new SettingsReader();
 
-        if (PatchStatus.GeneralAds()) {
-            if (SettingsEnum.ADREMOVER_BROWSE_STORE_BUTTON.getBoolean()) {
-                bufferBlockList.add("header_store_button".getBytes());
-                if (value.contains("|button")) {
-                    for (byte[] b: bufferBlockList) {
-                        int bufferIndex = indexOf(buffer.array(), b);
-                        if (bufferIndex > 0) count++;
-                    }
-                }
-            }
+            List<String> actionButtonsBlockList = new ArrayList<>();
+            List<String> menuItemBlockList = new ArrayList<>();
+            List<String> genericBufferList = new ArrayList<>();
+            List<String> bufferBlockList = new ArrayList<>();
+            List<String> generalBlockList = new ArrayList<>();
+            List<String> reelChannelBarBlockList = new ArrayList<>();
 
-            if (SettingsEnum.ADREMOVER_FEED_SURVEY.getBoolean() &&
-                value.contains("slimline_survey")) count++;
+            if (reader.isEnabled(SettingsEnum.HIDE_SHARE_BUTTON)) {
+                actionButtonsBlockList.add("yt_outline_share");
+            }
+            if (reader.isEnabled(SettingsEnum.HIDE_LIVE_CHAT_BUTTON)) {
+                actionButtonsBlockList.add("yt_outline_message_bubble_overlap");
+            }
+            if (reader.isEnabled(SettingsEnum.HIDE_REPORT_BUTTON)) {
+                actionButtonsBlockList.add("yt_outline_flag");
+            }
+            if (reader.isEnabled(SettingsEnum.HIDE_CREATE_SHORT_BUTTON)) {
+                actionButtonsBlockList.add("yt_outline_youtube_shorts_plus");
+            }
+            if (reader.isEnabled(SettingsEnum.HIDE_THANKS_BUTTON)) {
+                actionButtonsBlockList.add("yt_outline_dollar_sign_heart");
+            }
+            if (reader.isEnabled(SettingsEnum.HIDE_CREATE_CLIP_BUTTON)) {
+                actionButtonsBlockList.add("yt_outline_scissors");
+            }
 
-            if (SettingsEnum.ADREMOVER_SUGGESTIONS.getBoolean() &&
-                value.contains("horizontal_video_shelf") &&
-                !value.contains("activeStateScrollSelectionController=com")
-            ) count++;
+            if (reader.isEnabled(SettingsEnum.HIDE_MIX_PLAYLISTS)) {
+                genericBufferList.add("mix-watch");
+                genericBufferList.add("&list=");
+                genericBufferList.add("rellist");
+            }
 
-        }
+            if (reader.isEnabled(SettingsEnum.HIDE_CAPTIONS_MENU)) {
+                menuItemBlockList.add("_caption");
+                menuItemBlockList.add("_closed");
+            }
+            if (reader.isEnabled(SettingsEnum.HIDE_LOOP_MENU)) {
+                menuItemBlockList.add("_1_");
+            }
+            if (reader.isEnabled(SettingsEnum.HIDE_AMBIENT_MENU)) {
+                menuItemBlockList.add("_screen");
+            }
+            if (reader.isEnabled(SettingsEnum.HIDE_REPORT_MENU)) {
+                menuItemBlockList.add("_flag");
+            }
+            if (reader.isEnabled(SettingsEnum.HIDE_HELP_MENU)) {
+                menuItemBlockList.add("_question");
+            }
+            if (reader.isEnabled(SettingsEnum.HIDE_MORE_MENU)) {
+                menuItemBlockList.add("_info");
+            }
+            if (reader.isEnabled(SettingsEnum.HIDE_LISTENING_CONTROLS_MENU)) {
+                menuItemBlockList.add("_adjust");
+            }
+            if (reader.isEnabled(SettingsEnum.HIDE_AUDIO_TRACK_MENU)) {
+                menuItemBlockList.add("_person");
+            }
+            if (reader.isEnabled(SettingsEnum.HIDE_WATCH_IN_VR_MENU)) {
+                menuItemBlockList.add("_vr");
+            }
+            if (reader.isEnabled(SettingsEnum.HIDE_NERDS_MENU)) {
+                menuItemBlockList.add("_statistic");
+            }
+            if (reader.isEnabled(SettingsEnum.HIDE_YT_MUSIC_MENU)) {
+                menuItemBlockList.add("_open");
+            }
 
-        if (PatchStatus.ShortsComponent()) {
-            if (SettingsEnum.HIDE_SHORTS_SHELF.getBoolean()) {
-                generalBlockList.add("inline_shorts");
-                generalBlockList.add("reels_player_overlay");
-                generalBlockList.add("shorts_grid");
-                generalBlockList.add("shorts_shelf");
+            if (reader.isEnabled(SettingsEnum.HIDE_LIKE_BUTTON)) {
+                generalBlockList.add("ContainerType|ContainerType|like_button");
             }
 
-            if (SettingsEnum.HIDE_SHORTS_PLAYER_THANKS_BUTTON.getBoolean()) {
-                generalBlockList.add("suggested_action");
+            if (reader.isEnabled(SettingsEnum.HIDE_DISLIKE_BUTTON)) {
+                generalBlockList.add("ContainerType|ContainerType|dislike_button");
+                generalBlockList.add("ContainerType|ContainerType|segmented_like_dislike_button");
             }
 
-            if (SettingsEnum.HIDE_SHORTS_PLAYER_PLAYER_SUBSCRIPTIONS_BUTTON.getBoolean() &&
-                    value.contains("reel_channel_bar")
-            ) {
-                generalBlockList.add("subscribe_button");
+            if (reader.isEnabled(SettingsEnum.HIDE_DOWNLOAD_BUTTON)) {
+                generalBlockList.add("download_button");
             }
 
-            if (SettingsEnum.HIDE_SHORTS_PLAYER_PLAYER_JOIN_BUTTON.getBoolean() &&
-                    value.contains("reel_channel_bar")
-            ) {
-                generalBlockList.add("sponsor_button");
+            if (reader.isEnabled(SettingsEnum.HIDE_PLAYLIST_BUTTON)) {
+                generalBlockList.add("save_to_playlist_button");
             }
-        }
 
-        if (count > 0) return true;
-        for (String blockItem : generalBlockList) {
-            if (value.contains(blockItem)) return true;
-        }
+            final boolean generalAds = PatchStatus.GeneralAds();
+            if (generalAds && reader.isEnabled(SettingsEnum.ADREMOVER_BROWSE_STORE_BUTTON)) {
+                bufferBlockList.add("header_store_button");
+            }
+            final boolean feedSurvey = generalAds && reader.isEnabled(SettingsEnum.ADREMOVER_FEED_SURVEY);
+            final boolean suggestions = generalAds && reader.isEnabled(SettingsEnum.ADREMOVER_SUGGESTIONS);
 
-        return false;
-    }
+            if (PatchStatus.ShortsComponent()) {
+                if (reader.isEnabled(SettingsEnum.HIDE_SHORTS_SHELF)) {
+                    generalBlockList.add("inline_shorts");
+                    generalBlockList.add("reels_player_overlay");
+                    generalBlockList.add("shorts_grid");
+                    generalBlockList.add("shorts_shelf");
+                }
 
-    private static boolean containsAnyString(String value) {
-        for (int i = 1; i <= ExtendedLithoFilterPatch.excludedBlockingListSize; i++) {
-            if (value.contains(ExtendedLithoFilterPatch.excludedBlockingList.get(i))) return true;
-        }
-        return false;
-    }
+                if (reader.isEnabled(SettingsEnum.HIDE_SHORTS_PLAYER_THANKS_BUTTON)) {
+                    generalBlockList.add("suggested_action");
+                }
 
-    public static int indexOf(byte[] array, byte[] target) {
-        if (target.length == 0) return 0;
+                if (reader.isEnabled(SettingsEnum.HIDE_SHORTS_PLAYER_PLAYER_SUBSCRIPTIONS_BUTTON)) {
+                    reelChannelBarBlockList.add("subscribe_button");
+                }
 
-        for (int i = 0; i < array.length - target.length + 1; i++) {
-            boolean targetFound = true;
-            for (int j = 0; j < target.length; j++) {
-                if (array[i+j] != target[j]) {
-                    targetFound = false;
-                    break;
+                if (reader.isEnabled(SettingsEnum.HIDE_SHORTS_PLAYER_PLAYER_JOIN_BUTTON)) {
+                    reelChannelBarBlockList.add("sponsor_button");
                 }
             }
-            if (targetFound) return i;
+
+            var pathBuilder = new PatternMatcher.Builder()
+                    .add(WHITELIST_RULE, whiteList)
+                    .add(GENERAL_RULE, generalBlockList.toArray(new String[0]));
+            if (feedSurvey) pathBuilder.add(FEED_SURVEY_RULE, "slimline_survey");
+            if (suggestions) {
+                pathBuilder.add(SUGGESTIONS_RULE, "horizontal_video_shelf");
+                pathBuilder.add(SUGGESTIONS_EXCLUDED_RULE, "activeStateScrollSelectionController=com");
+            }
+            if (!reelChannelBarBlockList.isEmpty()) {
+                pathBuilder.add(REEL_CHANNEL_BAR_RULE, "reel_channel_bar");
+                pathBuilder.add(REEL_CHANNEL_BAR_ITEMS_RULE, reelChannelBarBlockList.toArray(new String[0]));
+            }
+            if (!actionButtonsBlockList.isEmpty()) pathBuilder.add(ACTION_BUTTONS_RULE, ACTION_BUTTON_PATH);
+            if (!menuItemBlockList.isEmpty()) pathBuilder.add(MENU_ITEMS_RULE, "overflow_menu_item");
+            // The first entry of the excluded blocking list is not used, as before.
+            if (!genericBufferList.isEmpty()) {
+                pathBuilder.add(MIX_PLAYLISTS_RULE,
+                        Arrays.copyOfRange(excludedBlockingList, 1, excludedBlockingList.length));
+            }
+            if (!bufferBlockList.isEmpty()) pathBuilder.add(STORE_BUTTON_RULE, "|button");
+            path = pathBuilder.build();
+            trace = reader.isEnabled(SettingsEnum.ADREMOVER_FILTER_TRACE);
+            prefetch = FeedPrefetcher.isEnabled();
+
+            windowedBuffer = new BytePatternMatcher.Builder()
+                    .add(ACTION_BUTTONS_RULE, actionButtonsBlockList.toArray(new String[0]))
+                    .add(MENU_ITEMS_RULE, menuItemBlockList.toArray(new String[0]))
+                    .build();
+            windowedBufferRules = (actionButtonsBlockList.isEmpty() ? 0 : ACTION_BUTTONS)
+                    | (menuItemBlockList.isEmpty() ? 0 : MENU_ITEMS);
+            buffer = new BytePatternMatcher.Builder()
+                    .add(MIX_PLAYLISTS_RULE, genericBufferList.toArray(new String[0]))
+                    .add(STORE_BUTTON_RULE, bufferBlockList.toArray(new String[0]))
+                    .build();
+            bufferRules = (genericBufferList.isEmpty() ? 0 : MIX_PLAYLISTS)
+                    | (bufferBlockList.isEmpty() ? 0 : STORE_BUTTON);
+
+            this.settings = reader.settings.toArray(new SettingsEnum[0]);
+            this.settingsState = reader.state;
+        }
+
+        /**
+         * @return If the settings still have the values the rules were built from.
+         */
+        boolean isCurrent() {
+            if (prefetch != FeedPrefetcher.isEnabled()) return false;
+            long state = 0;
+            for (int i = 0; i < settings.length; i++) {
+                if (settings[i].getBoolean()) state |= 1L << i;
+            }
+            return state == settingsState;
         }
-        return -1;
     }
 }
@@ -0,0 +1,62 @@
+package app.revanced.integrations.patches.ads;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stages of the Litho filters, in the order they run.
+ * A stage which decides the verdict ends the filtering of the component.
+ * <p>
+ * Counters are only updated while {@link app.revanced.integrations.settings.SettingsEnum#ADREMOVER_FILTER_TRACE}
+ * is enabled, so timing never slows down the component build thread otherwise.
+ */
+enum FilterStage {
+    /**
+     * Ignore list and whitelist.
+     */
+    IGNORE,
+    /**
+     * Rules of the component identifier.
+     */
+    IDENTIFIER,
+    /**
+     * Rules of the component path.
+     */
+    PATH,
+    /**
+     * Rules of the component protobuf buffer.
+     */
+    BUFFER;
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong decisions = new AtomicLong();
+    private final AtomicLong nanos = new AtomicLong();
+
+    /**
+     * @param startNanos {@link System#nanoTime()} at the start of the stage.
+     * @param decided    If the stage decided the verdict.
+     * @return {@link System#nanoTime()} at the end of the stage, which is the start of the next stage.
+     */
+    long record(final long startNanos, final boolean decided) {
+        final long now = System.nanoTime();
+        runs.incrementAndGet();
+        if (decided) decisions.incrementAndGet();
+        nanos.addAndGet(now - startNanos);
+        return now;
+    }
+
+    /**
+     * @return Runs, decisions and the average time of each stage, one stage per line.
+     */
+    static String getStatistics() {
+        var builder = new StringBuilder();
+        for (FilterStage stage : values()) {
+            final long runs = stage.runs.get();
+            builder.append(stage.name())
+                    .append(" runs: ").append(runs)
+                    .append(" decided: ").append(stage.decisions.get())
+                    .append(" average ns: ").append(runs == 0 ? 0 : stage.nanos.get() / runs)
+                    .append('\n');
+        }
+        return builder.toString();
+    }
+}
@@ -4,10 +4,10 @@ import android.view.View;
 
 import app.revanced.integrations.adremover.AdRemoverAPI;
 import app.revanced.integrations.settings.SettingsEnum;
-import app.revanced.integrations.utils.ReVancedUtils;
 
 public final class GeneralAdsPatch extends Filter {
-    private final String[] IGNORE = {
+    private final BlockRule ignore = new BlockRule(
+            null,
             "comment_thread", // skip blocking anything in the comments
             "download_",
             "downloads_",
@@ -16,7 +16,7 @@ public final class GeneralAdsPatch extends Filter {
             "playlist_add",
             "related_video_with_context", // Don't filter anything in the related video component.
             "|comment." // skip blocking anything in the comments replies
-    };
+    );
 
     private final BlockRule custom = new CustomBlockRule(
             SettingsEnum.ADREMOVER_USER_FILTER,
@@ -119,36 +119,25 @@ public final class GeneralAdsPatch extends Filter {
                 graySeparator,
                 carouselAd
         );
-    }
-
-    public boolean filter(final String path, final String identifier) {
-        BlockResult result;
 
-        if (custom.isEnabled() && custom.check(path).isBlocked())
-            result = BlockResult.CUSTOM;
-        else if (ReVancedUtils.containsAny(path, IGNORE))
-            result = BlockResult.IGNORED;
-        else if (pathRegister.contains(path) || identifierRegister.contains(identifier))
-            result = BlockResult.DEFINED;
-        else
-            result = BlockResult.UNBLOCKED;
+        this.overrideRegister.registerAll(
+                custom
+        );
 
-        return result.filter;
+        this.ignoreRegister.registerAll(
+                ignore
+        );
     }
 
-    private enum BlockResult {
-        UNBLOCKED(false, "Unblocked"),
-        IGNORED(false, "Ignored"),
-        DEFINED(true, "Blocked"),
-        CUSTOM(true, "Custom");
-
-        final boolean filter;
-        final String message;
-
-        BlockResult(boolean filter, String message) {
-            this.filter = filter;
-            this.message = message;
-        }
+    public BlockResult filter(final long pathMatches, final long identifierMatches) {
+        if (custom.isMatched(pathMatches))
+            return BlockResult.CUSTOM;
+        else if (ignore.isMatched(pathMatches))
+            return BlockResult.IGNORED;
+        else if (pathRegister.isMatched(pathMatches) || identifierRegister.isMatched(identifierMatches))
+            return BlockResult.DEFINED;
+        else
+            return BlockResult.UNBLOCKED;
     }
 
     /**
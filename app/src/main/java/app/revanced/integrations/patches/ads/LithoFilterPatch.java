@@ -5,30 +5,26 @@ import androidx.annotation.NonNull;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
 
 import app.revanced.integrations.settings.SettingsEnum;
-import app.revanced.integrations.utils.ReVancedUtils;
+import app.revanced.integrations.utils.LogHelper;
 
 class BlockRule {
-    final static class BlockResult {
-        private final boolean blocked;
-
-        public BlockResult(final boolean blocked) {
-            this.blocked = blocked;
-        }
-
-        public boolean isBlocked() {
-            return blocked;
-        }
-    }
-
     protected final SettingsEnum setting;
     private final String[] blocks;
 
+    /**
+     * Index of this rule in the compiled matcher, assigned by {@link LithoFilterPatch}.
+     */
+    private int index = -1;
+    private long bit;
+
     /**
      * Initialize a new rule for components.
      *
-     * @param setting The setting which controls the blocking of this component.
+     * @param setting The setting which controls the blocking of this component,
+     *                or null if the rule is always enabled.
      * @param blocks  The rules to block the component on.
      */
     public BlockRule(final SettingsEnum setting, final String... blocks) {
@@ -37,15 +33,70 @@ class BlockRule {
     }
 
     public boolean isEnabled() {
-        return setting.getBoolean();
+        return setting == null || setting.getBoolean();
+    }
+
+    public String[] getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Check the rule directly, without a compiled matcher.
+     *
+     * @param text Text to search, such as a path builder. It is not copied.
+     * @return If any pattern of this rule is found in the text.
+     */
+    public boolean check(final CharSequence text) {
+        if (text == null) return false;
+        for (String block : blocks) {
+            if (!block.isEmpty() && indexOf(text, block, 0) >= 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Same as {@link String#indexOf(String, int)}, but for any CharSequence.
+     */
+    static int indexOf(final CharSequence text, final String target, final int fromIndex) {
+        final int last = text.length() - target.length();
+        final char first = target.charAt(0);
+        for (int i = Math.max(fromIndex, 0); i <= last; i++) {
+            if (text.charAt(i) != first) continue;
+            int j = 1;
+            while (j < target.length() && text.charAt(i + j) == target.charAt(j)) j++;
+            if (j == target.length()) return i;
+        }
+        return -1;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return setting != null ? setting.name() : String.join(",", blocks);
     }
 
-    public BlockResult check(final String string) {
-        return new BlockResult(string != null && ReVancedUtils.containsAny(string, blocks));
+    int getIndex() {
+        return index;
+    }
+
+    void setIndex(final int index) {
+        this.index = index;
+        this.bit = 1L << index;
+    }
+
+    /**
+     * @param matches Bitmask of the rules found by a {@link PatternMatcher}.
+     * @return If this rule is one of the matches.
+     */
+    boolean isMatched(final long matches) {
+        return (matches & bit) != 0;
     }
 }
 
 final class CustomBlockRule extends BlockRule {
+    private final SettingsEnum filter;
+    private volatile CustomPatterns patterns = CustomPatterns.EMPTY;
+
     /**
      * Initialize a new rule for components.
      *
@@ -53,19 +104,76 @@ final class CustomBlockRule extends BlockRule {
      * @param filter  The setting which contains the list of component names.
      */
     public CustomBlockRule(final SettingsEnum setting, final SettingsEnum filter) {
-        super(setting, filter.getString().split(","));
+        super(setting);
+        this.filter = filter;
+    }
+
+    /**
+     * @return The patterns of the current filter setting value, parsed again only if the value changed.
+     */
+    CustomPatterns getPatterns() {
+        var patterns = this.patterns;
+        final String source = filter.getString();
+        if (!patterns.source.equals(source == null ? "" : source)) {
+            patterns = CustomPatterns.parse(source == null ? "" : source);
+            this.patterns = patterns;
+        }
+        return patterns;
+    }
+
+    /**
+     * @return The plain substring entries. Entries with anchors or wildcards are matched separately.
+     */
+    @Override
+    public String[] getBlocks() {
+        return getPatterns().literals;
+    }
+
+    @Override
+    public boolean check(final CharSequence text) {
+        return text != null && getPatterns().matches(text);
     }
 }
 
 abstract class Filter {
+    /**
+     * Path rules the filter evaluates on its own before the ignore register,
+     * such as user defined rules.
+     */
+    final protected LithoBlockRegister overrideRegister = new LithoBlockRegister();
+    /**
+     * Path rules of components the filter does not block, unless an override rule matches.
+     * They are also searched in the identifier first, see {@link LithoFilterPatch#filter(CharSequence, CharSequence)}.
+     */
+    final protected LithoBlockRegister ignoreRegister = new LithoBlockRegister();
     final protected LithoBlockRegister pathRegister = new LithoBlockRegister();
     final protected LithoBlockRegister identifierRegister = new LithoBlockRegister();
 
-    abstract boolean filter(final String path, final String identifier);
+    /**
+     * @param pathMatches       Bitmask of the enabled rules found in the path.
+     * @param identifierMatches Bitmask of the enabled rules found in the identifier.
+     * @return The verdict of this filter.
+     */
+    abstract BlockResult filter(final long pathMatches, final long identifierMatches);
+
+    /**
+     * @return The first rule of this filter found, as used by {@link LithoFilterPatch#getRuleName(int)},
+     * or {@link LithoFilterTrace#NO_RULE}. Override and ignore rules come first, as they are indexed first.
+     */
+    int getMatchedRule(final long pathMatches, final long identifierMatches) {
+        final long path = pathMatches & (overrideRegister.getMask() | ignoreRegister.getMask() | pathRegister.getMask());
+        if (path != 0) return Long.numberOfTrailingZeros(path);
+
+        final long identifier = identifierMatches & identifierRegister.getMask();
+        if (identifier != 0) return LithoFilterPatch.IDENTIFIER_RULES_START + Long.numberOfTrailingZeros(identifier);
+
+        return LithoFilterTrace.NO_RULE;
+    }
 }
 
 final class LithoBlockRegister implements Iterable<BlockRule> {
     private final ArrayList<BlockRule> blocks = new ArrayList<>();
+    private long mask;
 
     public void registerAll(BlockRule... blocks) {
         this.blocks.addAll(Arrays.asList(blocks));
@@ -77,17 +185,32 @@ final class LithoBlockRegister implements Iterable<BlockRule> {
         return blocks.iterator();
     }
 
-    public boolean contains(String path) {
-        for (var rule : this) {
-            if (!rule.isEnabled()) continue;
-
-            var result = rule.check(path);
-            if (result.isBlocked()) {
-                return true;
+    /**
+     * Assign matcher indexes to the rules of this register.
+     *
+     * @param indexedRules Rules already indexed, which the rules of this register are appended to.
+     */
+    void assignIndexes(final ArrayList<BlockRule> indexedRules) {
+        for (var rule : blocks) {
+            if (indexedRules.size() >= PatternMatcher.MAX_RULES) {
+                throw new IllegalStateException("Too many Litho block rules");
             }
+            rule.setIndex(indexedRules.size());
+            indexedRules.add(rule);
+            mask |= 1L << rule.getIndex();
         }
+    }
 
-        return false;
+    long getMask() {
+        return mask;
+    }
+
+    /**
+     * @param matches Bitmask of the rules found by a {@link PatternMatcher}.
+     * @return If any rule of this register is one of the matches.
+     */
+    boolean isMatched(final long matches) {
+        return (matches & mask) != 0;
     }
 }
 
@@ -97,14 +220,388 @@ public final class LithoFilterPatch {
             new CommentsPatch()
     };
 
-    public static boolean filter(final StringBuilder pathBuilder, final String identifier) {
-        var path = pathBuilder.toString();
-        if (path.isEmpty()) return false;
+    /**
+     * Identifier rules are numbered after the path rules, when a single rule number is needed.
+     */
+    static final int IDENTIFIER_RULES_START = PatternMatcher.MAX_RULES;
 
+    private static final BlockRule[] pathRules;
+    private static final BlockRule[] identifierRules;
+    private static final CustomBlockRule[] customRules;
+    /**
+     * Rules of all ignore registers, which are also path rules.
+     */
+    private static final BlockRule[] ignoreRules;
+
+    static {
+        var indexedPathRules = new ArrayList<BlockRule>();
+        var indexedIdentifierRules = new ArrayList<BlockRule>();
         for (var filter : filters) {
-            if (filter.filter(path, identifier)) return true;
+            filter.overrideRegister.assignIndexes(indexedPathRules);
+            filter.ignoreRegister.assignIndexes(indexedPathRules);
+            filter.pathRegister.assignIndexes(indexedPathRules);
+            filter.identifierRegister.assignIndexes(indexedIdentifierRules);
         }
+        pathRules = indexedPathRules.toArray(new BlockRule[0]);
+        identifierRules = indexedIdentifierRules.toArray(new BlockRule[0]);
 
-        return false;
+        var indexedCustomRules = new ArrayList<CustomBlockRule>();
+        for (var rule : pathRules) {
+            if (rule instanceof CustomBlockRule) indexedCustomRules.add((CustomBlockRule) rule);
+        }
+        customRules = indexedCustomRules.toArray(new CustomBlockRule[0]);
+
+        var registeredIgnoreRules = new ArrayList<BlockRule>();
+        for (var filter : filters) {
+            for (var rule : filter.ignoreRegister) registeredIgnoreRules.add(rule);
+        }
+        ignoreRules = registeredIgnoreRules.toArray(new BlockRule[0]);
+    }
+
+    /**
+     * Maximum number of component verdicts cached.
+     */
+    private static final int VERDICT_CACHE_CAPACITY = 1024;
+
+    /**
+     * Matchers of the currently enabled rules.
+     */
+    private static volatile CompiledRules compiledRules = CompiledRules.EMPTY;
+
+    /**
+     * Components the path segment index and the substring matcher disagreed on, while comparing both.
+     */
+    private static final AtomicLong segmentIndexMismatches = new AtomicLong();
+
+    /**
+     * Called on the component build thread for every Litho component.
+     * The path is searched in place without copying it to a String.
+     */
+    public static boolean filter(final StringBuilder pathBuilder, final String identifier) {
+        return filter((CharSequence) pathBuilder, identifier);
+    }
+
+    /**
+     * Filter a component in stages, each of which can end the filtering:
+     * <ol>
+     *     <li>{@link FilterStage#IGNORE}: The identifier is the root component, which the path usually starts with.
+     *     Ignore rules found in it are then also in the path. If every filter either ignores the component
+     *     or has no rules enabled, the component is not blocked without searching the path.</li>
+     *     <li>{@link FilterStage#IDENTIFIER}: The identifier rules.</li>
+     *     <li>{@link FilterStage#PATH}: The path rules, and the verdict of each filter.</li>
+     * </ol>
+     * The buffer rules are the last stage, in {@link ExtendedLithoFilterPatch}.
+     */
+    static boolean filter(final CharSequence path, final CharSequence identifier) {
+        if (path.length() == 0) return false;
+
+        var rules = getCompiledRules();
+        final boolean trace = rules.trace;
+        final long startNanos = trace ? System.nanoTime() : 0;
+
+        final long key = VerdictCache.hash(path, identifier);
+        final int cached = rules.verdictCache.get(key);
+        if (cached != VerdictCache.MISS) {
+            final boolean blocked = cached == VerdictCache.BLOCKED;
+            if (trace) {
+                LithoFilterTrace.record(key, identifier, blocked ? BlockResult.DEFINED : BlockResult.UNBLOCKED,
+                        LithoFilterTrace.NO_RULE, true, System.nanoTime() - startNanos);
+            }
+            return blocked;
+        }
+
+        long stageNanos = startNanos;
+        long pathMatches = 0;
+        long identifierMatches = 0;
+        var result = BlockResult.UNBLOCKED;
+        Filter decidingFilter = null;
+
+        boolean decided = false;
+        if (!rules.ignoreMatcher.isEmpty() && identifier != null && startsWith(path, identifier)) {
+            pathMatches = rules.ignoreMatcher.match(identifier);
+            decided = true;
+            for (int i = 0; i < filters.length; i++) {
+                final Filter filter = filters[i];
+                if (filter.ignoreRegister.isMatched(pathMatches)) {
+                    if (rules.overrideEnabled[i]) {
+                        // An override rule may still block the component.
+                        decided = false;
+                        break;
+                    }
+                    if (decidingFilter == null) {
+                        result = BlockResult.IGNORED;
+                        decidingFilter = filter;
+                    }
+                } else if (rules.filterEnabled[i]) {
+                    decided = false;
+                    break;
+                }
+            }
+            if (trace) stageNanos = FilterStage.IGNORE.record(stageNanos, decided);
+        }
+
+        if (!decided) {
+            result = BlockResult.UNBLOCKED;
+            decidingFilter = null;
+
+            identifierMatches = identifier == null ? 0 : rules.identifierMatcher.match(identifier);
+            if (trace) stageNanos = FilterStage.IDENTIFIER.record(stageNanos, false);
+
+            pathMatches = rules.matchPath(path);
+            if (pathMatches != 0 || identifierMatches != 0) {
+                for (var filter : filters) {
+                    var filterResult = filter.filter(pathMatches, identifierMatches);
+                    if (filterResult.filter) {
+                        result = filterResult;
+                        decidingFilter = filter;
+                        break;
+                    }
+                    if (filterResult == BlockResult.IGNORED && decidingFilter == null) {
+                        result = filterResult;
+                        decidingFilter = filter;
+                    }
+                }
+            }
+            if (trace) FilterStage.PATH.record(stageNanos, true);
+        }
+
+        rules.verdictCache.put(key, result.filter);
+        if (trace) {
+            LithoFilterTrace.record(key, identifier, result,
+                    decidingFilter == null
+                            ? LithoFilterTrace.NO_RULE
+                            : decidingFilter.getMatchedRule(pathMatches, identifierMatches),
+                    false, System.nanoTime() - startNanos);
+        }
+        return result.filter;
+    }
+
+    private static boolean startsWith(final CharSequence text, final CharSequence prefix) {
+        final int length = prefix.length();
+        if (length > text.length()) return false;
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param rule A path rule index, or an identifier rule index offset by {@link #IDENTIFIER_RULES_START}.
+     */
+    static String getRuleName(final int rule) {
+        return (rule >= IDENTIFIER_RULES_START
+                ? identifierRules[rule - IDENTIFIER_RULES_START]
+                : pathRules[rule]).toString();
+    }
+
+    /**
+     * @return Hit, miss and eviction counts of the verdict cache since the app started.
+     */
+    public static String getVerdictCacheStatistics() {
+        var cache = compiledRules.verdictCache;
+        return "hits: " + cache.getHits() + " misses: " + cache.getMisses() + " evictions: " + cache.getEvictions();
+    }
+
+    /**
+     * @return Number of components the path segment index found different rules for than the substring matcher,
+     * since the app started. Only counted while both {@link SettingsEnum#ADREMOVER_SEGMENT_INDEX}
+     * and {@link SettingsEnum#ADREMOVER_FILTER_TRACE} are enabled.
+     */
+    static long getSegmentIndexMismatches() {
+        return segmentIndexMismatches.get();
+    }
+
+    /**
+     * @return The matchers of the currently enabled rules, recompiled if a setting changed.
+     */
+    private static CompiledRules getCompiledRules() {
+        var rules = compiledRules;
+        if (rules.settingsChangeCount == SettingsEnum.getChangeCount()) return rules;
+
+        synchronized (LithoFilterPatch.class) {
+            rules = compiledRules;
+            final int changeCount = SettingsEnum.getChangeCount();
+            if (rules.settingsChangeCount == changeCount) return rules;
+
+            final long pathEnabled = getEnabledMask(pathRules);
+            final long identifierEnabled = getEnabledMask(identifierRules);
+            final CustomPatterns[] customPatterns = getCustomPatterns(pathEnabled);
+            final boolean segmentIndex = SettingsEnum.ADREMOVER_SEGMENT_INDEX.getBoolean();
+            if (rules != CompiledRules.EMPTY
+                    && rules.pathEnabled == pathEnabled
+                    && rules.identifierEnabled == identifierEnabled
+                    && Arrays.equals(rules.customPatterns, customPatterns)
+                    && (rules.pathIndex != null) == segmentIndex
+                    // Switching the compatibility mode also changes how verdicts are made.
+                    && (!segmentIndex || rules.trace == SettingsEnum.ADREMOVER_FILTER_TRACE.getBoolean())) {
+                // The change was to a setting unrelated to the rules.
+                rules = new CompiledRules(changeCount, rules);
+            } else {
+                // Cached verdicts are of the previous rules, so start with an empty cache.
+                rules = new CompiledRules(changeCount,
+                        pathEnabled, compile(pathRules, pathEnabled), customPatterns,
+                        segmentIndex ? compileIndex(pathRules, pathEnabled) : null,
+                        compile(ignoreRules, pathEnabled),
+                        identifierEnabled, compile(identifierRules, identifierEnabled),
+                        new VerdictCache(VERDICT_CACHE_CAPACITY, rules.verdictCache));
+            }
+
+            compiledRules = rules;
+            return rules;
+        }
+    }
+
+    private static long getEnabledMask(final BlockRule[] rules) {
+        long enabled = 0;
+        for (var rule : rules) {
+            if (rule.isEnabled()) enabled |= 1L << rule.getIndex();
+        }
+        return enabled;
+    }
+
+    /**
+     * @return The current patterns of each custom rule, or null for disabled rules.
+     * Patterns are only parsed again if the filter setting changed, so unchanged patterns are the same instance.
+     */
+    private static CustomPatterns[] getCustomPatterns(final long enabled) {
+        var patterns = new CustomPatterns[customRules.length];
+        for (int i = 0; i < customRules.length; i++) {
+            if (customRules[i].isMatched(enabled)) patterns[i] = customRules[i].getPatterns();
+        }
+        return patterns;
+    }
+
+    private static PatternMatcher compile(final BlockRule[] rules, final long enabled) {
+        if (enabled == 0) return PatternMatcher.EMPTY;
+
+        var builder = new PatternMatcher.Builder();
+        for (var rule : rules) {
+            if (rule.isMatched(enabled)) builder.add(rule.getIndex(), rule.getBlocks());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Custom rules are only searched as substrings, the same as without the index,
+     * so the index never changes which components a custom filter blocks.
+     */
+    private static PathSegmentIndex compileIndex(final BlockRule[] rules, final long enabled) {
+        var builder = new PathSegmentIndex.Builder();
+        for (var rule : rules) {
+            if (!rule.isMatched(enabled)) continue;
+            if (rule instanceof CustomBlockRule) {
+                builder.addSubstrings(rule.getIndex(), rule.getBlocks());
+            } else {
+                builder.add(rule.getIndex(), rule.getBlocks());
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Immutable snapshot of the matchers compiled from the enabled rules.
+     */
+    private static final class CompiledRules {
+        static final CompiledRules EMPTY = new CompiledRules(Integer.MIN_VALUE,
+                0, PatternMatcher.EMPTY, new CustomPatterns[0], null, PatternMatcher.EMPTY,
+                0, PatternMatcher.EMPTY,
+                new VerdictCache(1, null));
+
+        final int settingsChangeCount;
+        final long pathEnabled;
+        final PatternMatcher pathMatcher;
+        /**
+         * Patterns of each of {@link #customRules}, or null if the rule is disabled.
+         * Plain substring entries are part of {@link #pathMatcher}.
+         */
+        final CustomPatterns[] customPatterns;
+        /**
+         * Index of the same rules as {@link #pathMatcher}, or null if {@link SettingsEnum#ADREMOVER_SEGMENT_INDEX} is disabled.
+         */
+        final PathSegmentIndex pathIndex;
+        /**
+         * The enabled ignore rules, searched in the identifier.
+         */
+        final PatternMatcher ignoreMatcher;
+        final long identifierEnabled;
+        final PatternMatcher identifierMatcher;
+        final VerdictCache verdictCache;
+        /**
+         * If decisions are recorded to {@link LithoFilterTrace}.
+         */
+        final boolean trace;
+        /**
+         * If each of {@link #filters} has any override rule enabled.
+         */
+        final boolean[] overrideEnabled;
+        /**
+         * If each of {@link #filters} has any override, path or identifier rule enabled.
+         */
+        final boolean[] filterEnabled;
+
+        CompiledRules(int settingsChangeCount,
+                      long pathEnabled, PatternMatcher pathMatcher, CustomPatterns[] customPatterns,
+                      PathSegmentIndex pathIndex, PatternMatcher ignoreMatcher,
+                      long identifierEnabled, PatternMatcher identifierMatcher,
+                      VerdictCache verdictCache) {
+            this.settingsChangeCount = settingsChangeCount;
+            this.pathEnabled = pathEnabled;
+            this.pathMatcher = pathMatcher;
+            this.customPatterns = customPatterns;
+            this.pathIndex = pathIndex;
+            this.ignoreMatcher = ignoreMatcher;
+            this.identifierEnabled = identifierEnabled;
+            this.identifierMatcher = identifierMatcher;
+            this.verdictCache = verdictCache;
+            this.trace = SettingsEnum.ADREMOVER_FILTER_TRACE.getBoolean();
+
+            overrideEnabled = new boolean[filters.length];
+            filterEnabled = new boolean[filters.length];
+            for (int i = 0; i < filters.length; i++) {
+                final Filter filter = filters[i];
+                overrideEnabled[i] = filter.overrideRegister.isMatched(pathEnabled);
+                filterEnabled[i] = overrideEnabled[i]
+                        || filter.pathRegister.isMatched(pathEnabled)
+                        || filter.identifierRegister.isMatched(identifierEnabled);
+            }
+        }
+
+        CompiledRules(int settingsChangeCount, CompiledRules rules) {
+            this(settingsChangeCount,
+                    rules.pathEnabled, rules.pathMatcher, rules.customPatterns, rules.pathIndex, rules.ignoreMatcher,
+                    rules.identifierEnabled, rules.identifierMatcher,
+                    rules.verdictCache);
+        }
+
+        /**
+         * @return Bitmask of the enabled path rules found in the path, including custom entries with anchors or wildcards.
+         */
+        long matchPath(final CharSequence path) {
+            long matches;
+            if (pathIndex == null) {
+                matches = pathMatcher.match(path);
+            } else if (trace) {
+                // Compatibility mode. Compare with the substring matcher, and keep its verdict.
+                matches = pathMatcher.match(path);
+                final long difference = pathIndex.match(path) ^ matches;
+                if (difference != 0) {
+                    segmentIndexMismatches.incrementAndGet();
+                    LogHelper.info(LithoFilterPatch.class, "Path segment index mismatch for rule "
+                            + getRuleName(Long.numberOfTrailingZeros(difference)) + " on path: " + path);
+                }
+            } else {
+                matches = pathIndex.match(path);
+            }
+            for (int i = 0; i < customPatterns.length; i++) {
+                final CustomPatterns patterns = customPatterns[i];
+                if (patterns == null || !patterns.hasPatterns()) continue;
+
+                final CustomBlockRule rule = customRules[i];
+                if (!rule.isMatched(matches) && patterns.matchesPatterns(path)) {
+                    matches |= 1L << rule.getIndex();
+                }
+            }
+            return matches;
+        }
     }
 }
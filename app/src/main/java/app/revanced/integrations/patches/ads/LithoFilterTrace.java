@@ -0,0 +1,115 @@
+package app.revanced.integrations.patches.ads;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Records the most recent Litho filter decisions, for tuning the filters without logging every component.
+ * <p>
+ * Decisions are kept in a fixed size lock free ring buffer, so recording never blocks the component build thread
+ * and the oldest decisions are overwritten once the buffer is full.
+ * Recording is only done while {@link app.revanced.integrations.settings.SettingsEnum#ADREMOVER_FILTER_TRACE} is enabled.
+ */
+public final class LithoFilterTrace {
+    /**
+     * Number of decisions kept. Must be a power of two.
+     */
+    private static final int CAPACITY = 2048;
+
+    /**
+     * Rule of decisions not made by a rule, such as unmatched or cached components.
+     */
+    static final int NO_RULE = -1;
+
+    // Fields of each entry in the data array.
+    private static final int PATH_HASH = 0;
+    private static final int NANOS = 1;
+    private static final int DECISION = 2;
+    private static final int ENTRY_FIELDS = 3;
+
+    private static final AtomicLong nextSequence = new AtomicLong();
+    /**
+     * Sequence number + 1 of the entry in each slot, zero if empty, or negative while being written.
+     */
+    private static final AtomicLongArray stamps = new AtomicLongArray(CAPACITY);
+    private static final AtomicLongArray data = new AtomicLongArray(CAPACITY * ENTRY_FIELDS);
+    private static final AtomicReferenceArray<String> identifiers = new AtomicReferenceArray<>(CAPACITY);
+
+    private LithoFilterTrace() {
+    } // utility class
+
+    /**
+     * @param pathHash   Hash of the component path.
+     * @param identifier Component identifier, can be null.
+     * @param result     The filter verdict.
+     * @param rule       The rule which made the verdict, or {@link #NO_RULE}.
+     * @param cached     If the verdict came from the verdict cache.
+     * @param nanos      Time spent filtering the component.
+     */
+    static void record(final long pathHash, final CharSequence identifier, final BlockResult result,
+                       final int rule, final boolean cached, final long nanos) {
+        final long sequence = nextSequence.getAndIncrement();
+        final int slot = (int) sequence & (CAPACITY - 1);
+        final int index = slot * ENTRY_FIELDS;
+
+        stamps.set(slot, -(sequence + 1));
+        data.set(index + PATH_HASH, pathHash);
+        data.set(index + NANOS, nanos);
+        data.set(index + DECISION, ((long) rule << 32) | ((long) result.ordinal() << 1) | (cached ? 1 : 0));
+        // The identifier is always a String at the hook, so this does not copy.
+        identifiers.set(slot, identifier == null ? null : identifier.toString());
+        stamps.set(slot, sequence + 1);
+    }
+
+    /**
+     * Write the recorded decisions, oldest first, as tab separated values.
+     *
+     * @return Number of decisions written.
+     */
+    public static int export(final File file) throws IOException {
+        int count = 0;
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write("# Verdict cache " + LithoFilterPatch.getVerdictCacheStatistics() + "\n");
+            writer.write("# Path segment index mismatches: " + LithoFilterPatch.getSegmentIndexMismatches() + "\n");
+            writer.write("# Extended filter calls: " + ExtendedLithoFilterPatch.getFilterCalls()
+                    + " rule snapshots built: " + ExtendedLithoFilterPatch.getSnapshotsBuilt() + "\n");
+            for (String line : FilterStage.getStatistics().split("\n")) {
+                writer.write("# Stage " + line + "\n");
+            }
+            writer.write("sequence\tpath_hash\tidentifier\tverdict\tcached\trule\tnanos\n");
+
+            final long end = nextSequence.get();
+            for (long sequence = Math.max(0, end - CAPACITY); sequence < end; sequence++) {
+                final int slot = (int) sequence & (CAPACITY - 1);
+                final int index = slot * ENTRY_FIELDS;
+
+                if (stamps.get(slot) != sequence + 1) continue;
+                final long pathHash = data.get(index + PATH_HASH);
+                final long nanos = data.get(index + NANOS);
+                final long decision = data.get(index + DECISION);
+                final String identifier = identifiers.get(slot);
+                // Skip the entry if it was overwritten while reading it.
+                if (stamps.get(slot) != sequence + 1) continue;
+
+                final int rule = (int) (decision >> 32);
+                final BlockResult result = BlockResult.values()[(int) (decision & 0xFFFFFFFFL) >> 1];
+                writer.write(sequence + "\t"
+                        + Long.toHexString(pathHash) + "\t"
+                        + identifier + "\t"
+                        + result.message + "\t"
+                        + ((decision & 1) != 0) + "\t"
+                        + (rule == NO_RULE ? "" : LithoFilterPatch.getRuleName(rule)) + "\t"
+                        + nanos + "\n");
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,236 @@
+package app.revanced.integrations.patches.ads;
+
+import java.util.ArrayList;
+
+/**
+ * Rule lookup by the segments of a Litho component path, such as
+ * {@code home_video_with_context.eml|3c4ca7b1f9e5ac37|ContainerType|ad_badge.eml}.
+ * <p>
+ * The path is split at {@code |} into segments without allocating,
+ * and the name of each segment (the part before the first {@code .}) is looked up in hash tables:
+ * <ul>
+ *     <li>Patterns ending with {@code _}, such as {@code ads_}, match names starting with them.</li>
+ *     <li>Patterns starting with {@code _}, such as {@code _ad}, match names ending with them.</li>
+ *     <li>Other plain names, such as {@code carousel_ad}, match equal names,
+ *     and names starting with them followed by {@code _}, such as {@code carousel_ad_item}.</li>
+ * </ul>
+ * Patterns containing {@code |} or {@code .}, or starting and ending with {@code _},
+ * and patterns added with {@link Builder#addSubstrings(int, String...)},
+ * are searched as substrings of the whole path with a {@link PatternMatcher}.
+ * <p>
+ * Unlike the substring search, a name pattern does not match inside a longer name,
+ * so verdicts are only the same if no rule relies on that.
+ * {@link LithoFilterPatch} can compare both for every component, see {@link LithoFilterPatch#getSegmentIndexMismatches()}.
+ */
+final class PathSegmentIndex {
+    private static final char SEGMENT_SEPARATOR = '|';
+    private static final char NAME_END = '.';
+    private static final char WORD_SEPARATOR = '_';
+
+    /**
+     * Names, hashed from the start.
+     */
+    private final SegmentTable names;
+    /**
+     * Name prefixes ending with {@link #WORD_SEPARATOR}, hashed from the start.
+     */
+    private final SegmentTable prefixes;
+    /**
+     * Name suffixes starting with {@link #WORD_SEPARATOR}, hashed from the end.
+     */
+    private final SegmentTable suffixes;
+    /**
+     * Patterns which are not names, searched in the whole path.
+     */
+    private final PatternMatcher residual;
+
+    private PathSegmentIndex(SegmentTable names, SegmentTable prefixes, SegmentTable suffixes, PatternMatcher residual) {
+        this.names = names;
+        this.prefixes = prefixes;
+        this.suffixes = suffixes;
+        this.residual = residual;
+    }
+
+    /**
+     * @return Bitmask of the rules found in the path, the same as {@link PatternMatcher#match(CharSequence)}.
+     */
+    long match(final CharSequence path) {
+        long matches = residual.match(path);
+
+        final int length = path.length();
+        int start = 0;
+        while (start <= length) {
+            int end = start;
+            int nameEnd = -1;
+            while (end < length) {
+                final char c = path.charAt(end);
+                if (c == SEGMENT_SEPARATOR) break;
+                if (c == NAME_END && nameEnd < 0) nameEnd = end;
+                end++;
+            }
+            if (nameEnd < 0) nameEnd = end;
+            if (nameEnd > start) matches |= matchName(path, start, nameEnd);
+
+            start = end + 1;
+        }
+
+        return matches;
+    }
+
+    private long matchName(final CharSequence path, final int start, final int end) {
+        long matches = 0;
+
+        // Forward pass for the name itself and the prefixes.
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            final char c = path.charAt(i);
+            if (c == WORD_SEPARATOR && i > start && !names.isEmpty()) {
+                matches |= names.get(hash, path, start, i);
+            }
+            hash = hash * 31 + c;
+            if (c == WORD_SEPARATOR && !prefixes.isEmpty()) {
+                matches |= prefixes.get(hash, path, start, i + 1);
+            }
+        }
+        if (!names.isEmpty()) matches |= names.get(hash, path, start, end);
+
+        // Backward pass for the suffixes.
+        if (!suffixes.isEmpty()) {
+            hash = 0;
+            for (int i = end - 1; i >= start; i--) {
+                final char c = path.charAt(i);
+                hash = hash * 31 + c;
+                if (c == WORD_SEPARATOR) matches |= suffixes.get(hash, path, i, end);
+            }
+        }
+
+        return matches;
+    }
+
+    static final class Builder {
+        private final ArrayList<String> names = new ArrayList<>();
+        private final ArrayList<Long> nameRules = new ArrayList<>();
+        private final ArrayList<String> prefixes = new ArrayList<>();
+        private final ArrayList<Long> prefixRules = new ArrayList<>();
+        private final ArrayList<String> suffixes = new ArrayList<>();
+        private final ArrayList<Long> suffixRules = new ArrayList<>();
+        private final PatternMatcher.Builder residual = new PatternMatcher.Builder();
+
+        /**
+         * Add patterns for a rule. Empty and null patterns are ignored.
+         *
+         * @see PatternMatcher.Builder#add(int, String...)
+         */
+        Builder add(final int rule, final String... patterns) {
+            if (rule < 0 || rule >= PatternMatcher.MAX_RULES) {
+                throw new IllegalArgumentException("Rule index out of range: " + rule);
+            }
+
+            for (String pattern : patterns) {
+                if (pattern == null || pattern.isEmpty()) continue;
+
+                final boolean startsWithWord = pattern.charAt(0) != WORD_SEPARATOR;
+                final boolean endsWithWord = pattern.charAt(pattern.length() - 1) != WORD_SEPARATOR;
+                if (pattern.indexOf(SEGMENT_SEPARATOR) >= 0 || pattern.indexOf(NAME_END) >= 0
+                        || (!startsWithWord && !endsWithWord)) {
+                    residual.add(rule, pattern);
+                } else if (!endsWithWord) {
+                    prefixes.add(pattern);
+                    prefixRules.add(1L << rule);
+                } else if (!startsWithWord) {
+                    suffixes.add(pattern);
+                    suffixRules.add(1L << rule);
+                } else {
+                    names.add(pattern);
+                    nameRules.add(1L << rule);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Add patterns for a rule, which are always searched as substrings of the whole path,
+         * such as user defined patterns, which are not written with path segments in mind.
+         */
+        Builder addSubstrings(final int rule, final String... patterns) {
+            residual.add(rule, patterns);
+            return this;
+        }
+
+        PathSegmentIndex build() {
+            return new PathSegmentIndex(
+                    new SegmentTable(names, nameRules, false),
+                    new SegmentTable(prefixes, prefixRules, false),
+                    new SegmentTable(suffixes, suffixRules, true),
+                    residual.build());
+        }
+    }
+
+    /**
+     * Open addressing hash table from strings to rule bitmasks,
+     * looked up by a range of a CharSequence without copying it.
+     */
+    private static final class SegmentTable {
+        private final int[] hashes;
+        private final String[] keys;
+        private final long[] rules;
+
+        /**
+         * @param backward If the keys are hashed from their last character to their first.
+         */
+        SegmentTable(final ArrayList<String> keys, final ArrayList<Long> rules, final boolean backward) {
+            final int capacity = keys.isEmpty() ? 1 : Integer.highestOneBit(keys.size() * 4 - 1) * 2;
+            this.hashes = new int[capacity];
+            this.keys = new String[capacity];
+            this.rules = new long[capacity];
+
+            for (int k = 0; k < keys.size(); k++) {
+                final String key = keys.get(k);
+                final int hash = hash(key, backward);
+                int slot = spread(hash) & (capacity - 1);
+                while (this.keys[slot] != null && !this.keys[slot].equals(key)) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                this.hashes[slot] = hash;
+                this.keys[slot] = key;
+                this.rules[slot] |= rules.get(k);
+            }
+        }
+
+        boolean isEmpty() {
+            return keys.length == 1 && keys[0] == null;
+        }
+
+        /**
+         * @param hash Hash of the range, in the direction of the keys.
+         * @return Rules of the key equal to the range, or zero.
+         */
+        long get(final int hash, final CharSequence text, final int start, final int end) {
+            final int mask = keys.length - 1;
+            for (int slot = spread(hash) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+                if (hashes[slot] == hash && regionEquals(keys[slot], text, start, end)) return rules[slot];
+            }
+            return 0;
+        }
+
+        private static int hash(final String key, final boolean backward) {
+            int hash = 0;
+            for (int i = 0; i < key.length(); i++) {
+                hash = hash * 31 + key.charAt(backward ? key.length() - 1 - i : i);
+            }
+            return hash;
+        }
+
+        private static int spread(final int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
+        private static boolean regionEquals(final String key, final CharSequence text, final int start, final int end) {
+            if (key.length() != end - start) return false;
+            for (int i = 0; i < key.length(); i++) {
+                if (key.charAt(i) != text.charAt(start + i)) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package app.revanced.integrations.patches.ads;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+/**
+ * Multi-pattern substring matcher (Aho-Corasick automaton).
+ * <p>
+ * All patterns are compiled into a single deterministic automaton,
+ * so a text is searched for every pattern in one linear pass without any allocation.
+ * Each pattern belongs to a rule, and a search reports which rules had at least one pattern found.
+ * Rules are identified by their index, which must be between 0 and {@link #MAX_RULES} - 1.
+ */
+final class PatternMatcher {
+    /**
+     * Maximum number of distinct rules a matcher can report.
+     */
+    static final int MAX_RULES = Long.SIZE;
+
+    /**
+     * Matcher without any patterns.
+     */
+    static final PatternMatcher EMPTY = new Builder().build();
+
+    /**
+     * Character class of each ASCII character. Class 0 is used for characters not found in any pattern.
+     */
+    private final int[] asciiClasses;
+    /**
+     * Sorted non ASCII characters found in the patterns.
+     * The character class of {@code otherChars[i]} is {@code otherClassesStart + i}.
+     */
+    private final char[] otherChars;
+    private final int otherClassesStart;
+    /**
+     * Number of character classes, and the row length of {@link #transitions}.
+     */
+    private final int width;
+    /**
+     * Transition table. The next state of {@code state} for character class {@code c}
+     * is {@code transitions[state * width + c]}.
+     */
+    private final int[] transitions;
+    /**
+     * Bitmask of the rules with a pattern ending at each state, including patterns that are suffixes.
+     */
+    private final long[] outputs;
+
+    private PatternMatcher(int[] asciiClasses, char[] otherChars, int otherClassesStart,
+                           int width, int[] transitions, long[] outputs) {
+        this.asciiClasses = asciiClasses;
+        this.otherChars = otherChars;
+        this.otherClassesStart = otherClassesStart;
+        this.width = width;
+        this.transitions = transitions;
+        this.outputs = outputs;
+    }
+
+    /**
+     * @return If this matcher has no patterns, and any search will never match.
+     */
+    boolean isEmpty() {
+        return outputs.length == 1;
+    }
+
+    /**
+     * Search the text for all patterns.
+     *
+     * @param text Text to search.
+     * @return Bitmask of the rules with a pattern found in the text, or zero if nothing matched.
+     */
+    long match(final CharSequence text) {
+        return match(text, 0);
+    }
+
+    /**
+     * Search the text for all patterns, stopping early once any of the given rules is found.
+     *
+     * @param text     Text to search.
+     * @param stopMask Rules that end the search as soon as one of them is found.
+     * @return Bitmask of the rules with a pattern found in the searched part of the text.
+     */
+    long match(final CharSequence text, final long stopMask) {
+        if (isEmpty()) return 0;
+
+        final int[] transitions = this.transitions;
+        final long[] outputs = this.outputs;
+        final int width = this.width;
+
+        long matches = 0;
+        int state = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            state = transitions[state * width + classOf(text.charAt(i))];
+            matches |= outputs[state];
+            if ((matches & stopMask) != 0) break;
+        }
+
+        return matches;
+    }
+
+    private int classOf(final char c) {
+        if (c < 128) return asciiClasses[c];
+
+        final int index = Arrays.binarySearch(otherChars, c);
+        return index < 0 ? 0 : otherClassesStart + index;
+    }
+
+    static final class Builder {
+        private final ArrayList<String> patterns = new ArrayList<>();
+        private final ArrayList<Long> rules = new ArrayList<>();
+
+        /**
+         * Add patterns for a rule. Empty and null patterns are ignored.
+         *
+         * @param rule     The rule index, reported if any of the patterns is found.
+         * @param patterns The substrings to search for.
+         */
+        Builder add(final int rule, final String... patterns) {
+            if (rule < 0 || rule >= MAX_RULES) {
+                throw new IllegalArgumentException("Rule index out of range: " + rule);
+            }
+
+            for (String pattern : patterns) {
+                if (pattern == null || pattern.isEmpty()) continue;
+                this.patterns.add(pattern);
+                this.rules.add(1L << rule);
+            }
+            return this;
+        }
+
+        PatternMatcher build() {
+            // Map the characters used by the patterns to dense character classes.
+            TreeSet<Character> characters = new TreeSet<>();
+            for (String pattern : patterns) {
+                for (int i = 0; i < pattern.length(); i++) characters.add(pattern.charAt(i));
+            }
+
+            int[] asciiClasses = new int[128];
+            int asciiCount = 0;
+            for (char c : characters) {
+                if (c < 128) asciiClasses[c] = ++asciiCount;
+            }
+            char[] otherChars = new char[characters.size() - asciiCount];
+            int otherCount = 0;
+            for (char c : characters) {
+                if (c >= 128) otherChars[otherCount++] = c;
+            }
+            final int otherClassesStart = asciiCount + 1;
+            final int width = characters.size() + 1;
+
+            ArrayList<int[]> sequences = new ArrayList<>(patterns.size());
+            for (String pattern : patterns) {
+                int[] sequence = new int[pattern.length()];
+                for (int i = 0; i < sequence.length; i++) {
+                    char c = pattern.charAt(i);
+                    sequence[i] = c < 128
+                            ? asciiClasses[c]
+                            : otherClassesStart + Arrays.binarySearch(otherChars, c);
+                }
+                sequences.add(sequence);
+            }
+            Automaton automaton = Automaton.build(sequences, rules, width);
+
+            return new PatternMatcher(asciiClasses, otherChars, otherClassesStart,
+                    width, automaton.transitions, automaton.outputs);
+        }
+    }
+
+    /**
+     * Aho-Corasick automaton over dense symbol classes, shared by the text and byte matchers.
+     * Symbol class 0 must not be used by any pattern, and is used for symbols not found in any pattern.
+     */
+    static final class Automaton {
+        /**
+         * Transition table. The next state of {@code state} for symbol class {@code c}
+         * is {@code transitions[state * width + c]}.
+         */
+        final int[] transitions;
+        /**
+         * Bitmask of the rules with a pattern ending at each state, including patterns that are suffixes.
+         */
+        final long[] outputs;
+        /**
+         * Bitmask of the rules with a pattern ending at each state, without the patterns that are suffixes.
+         */
+        final long[] patternOutputs;
+        /**
+         * Length of the pattern prefix of each state.
+         */
+        final int[] depths;
+        /**
+         * State of the longest proper suffix of each state, which is also a pattern prefix.
+         */
+        final int[] failures;
+
+        private Automaton(int[] transitions, long[] outputs, long[] patternOutputs, int[] depths, int[] failures) {
+            this.transitions = transitions;
+            this.outputs = outputs;
+            this.patternOutputs = patternOutputs;
+            this.depths = depths;
+            this.failures = failures;
+        }
+
+        /**
+         * @param sequences Symbol classes of each pattern.
+         * @param rules     Rule bit of each pattern.
+         * @param width     Number of symbol classes, including class 0.
+         */
+        static Automaton build(final ArrayList<int[]> sequences, final ArrayList<Long> rules, final int width) {
+            // Build the trie. A child state of zero means no child, as the root cannot be a child.
+            ArrayList<int[]> rows = new ArrayList<>();
+            rows.add(new int[width]);
+            ArrayList<Integer> depths = new ArrayList<>();
+            depths.add(0);
+            long[] outputs = new long[1];
+
+            for (int p = 0; p < sequences.size(); p++) {
+                int state = 0;
+                for (int symbolClass : sequences.get(p)) {
+                    int next = rows.get(state)[symbolClass];
+                    if (next == 0) {
+                        next = rows.size();
+                        rows.add(new int[width]);
+                        depths.add(depths.get(state) + 1);
+                        rows.get(state)[symbolClass] = next;
+                    }
+                    state = next;
+                }
+                if (state >= outputs.length) {
+                    outputs = Arrays.copyOf(outputs, Math.max(rows.size(), outputs.length * 2));
+                }
+                outputs[state] |= rules.get(p);
+            }
+            outputs = Arrays.copyOf(outputs, rows.size());
+            final long[] patternOutputs = outputs.clone();
+
+            // Breadth first, resolve the failure links into a complete transition table.
+            int[] failures = new int[rows.size()];
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            int[] rootRow = rows.get(0);
+            for (int c = 0; c < width; c++) {
+                if (rootRow[c] != 0) queue.add(rootRow[c]);
+            }
+            while (!queue.isEmpty()) {
+                final int state = queue.poll();
+                int[] row = rows.get(state);
+                int[] failureRow = rows.get(failures[state]);
+                for (int c = 0; c < width; c++) {
+                    final int child = row[c];
+                    if (child == 0) {
+                        row[c] = failureRow[c];
+                    } else {
+                        failures[child] = failureRow[c];
+                        outputs[child] |= outputs[failures[child]];
+                        queue.add(child);
+                    }
+                }
+            }
+
+            int[] transitions = new int[rows.size() * width];
+            for (int state = 0; state < rows.size(); state++) {
+                System.arraycopy(rows.get(state), 0, transitions, state * width, width);
+            }
+
+            int[] stateDepths = new int[rows.size()];
+            for (int state = 0; state < stateDepths.length; state++) {
+                stateDepths[state] = depths.get(state);
+            }
+
+            return new Automaton(transitions, outputs, patternOutputs, stateDepths, failures);
+        }
+    }
+}
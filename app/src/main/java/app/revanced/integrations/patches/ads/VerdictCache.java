@@ -0,0 +1,129 @@
+package app.revanced.integrations.patches.ads;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, lock free cache of filter verdicts keyed by a 64 bit hash of the component.
+ * <p>
+ * Entries are immutable and kept in sets of two slots, the most recently used first,
+ * so a lookup reads at most two array elements and never waits for another thread.
+ * Threads racing on the same set can lose an entry, which only costs filtering the component again.
+ */
+final class VerdictCache {
+    static final int MISS = -1;
+    static final int UNBLOCKED = 0;
+    static final int BLOCKED = 1;
+
+    private static final int WAYS = 2;
+
+    private static final class Entry {
+        final long key;
+        final boolean blocked;
+
+        Entry(long key, boolean blocked) {
+            this.key = key;
+            this.blocked = blocked;
+        }
+    }
+
+    /**
+     * Sets of {@link #WAYS} slots. The set of a key starts at {@code setOf(key)}.
+     */
+    private final Entry[] entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param capacity Maximum number of entries, rounded up to a power of two.
+     * @param previous Cache this cache replaces, which the counters are carried over from. Can be null.
+     */
+    VerdictCache(final int capacity, final VerdictCache previous) {
+        entries = new Entry[Math.max(WAYS, Integer.highestOneBit(Math.max(1, capacity) * 2 - 1))];
+
+        if (previous != null) {
+            hits.set(previous.hits.get());
+            misses.set(previous.misses.get());
+            evictions.set(previous.evictions.get());
+        }
+    }
+
+    /**
+     * @return FNV-1a hash of the path and identifier.
+     */
+    static long hash(final CharSequence path, final CharSequence identifier) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0, length = path.length(); i < length; i++) {
+            hash = (hash ^ path.charAt(i)) * 0x100000001b3L;
+        }
+        // Separate the path from the identifier, so moving characters between them changes the hash.
+        hash = (hash ^ 0xFFFF) * 0x100000001b3L;
+        if (identifier != null) {
+            for (int i = 0, length = identifier.length(); i < length; i++) {
+                hash = (hash ^ identifier.charAt(i)) * 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @return {@link #BLOCKED}, {@link #UNBLOCKED}, or {@link #MISS} if the key is not cached.
+     */
+    int get(final long key) {
+        final Entry[] entries = this.entries;
+        final int set = setOf(key);
+
+        final Entry first = entries[set];
+        if (first != null && first.key == key) {
+            hits.incrementAndGet();
+            return first.blocked ? BLOCKED : UNBLOCKED;
+        }
+
+        final Entry second = entries[set + 1];
+        if (second != null && second.key == key) {
+            // Now the most recently used of the set.
+            entries[set] = second;
+            entries[set + 1] = first;
+            hits.incrementAndGet();
+            return second.blocked ? BLOCKED : UNBLOCKED;
+        }
+
+        misses.incrementAndGet();
+        return MISS;
+    }
+
+    void put(final long key, final boolean verdict) {
+        final Entry[] entries = this.entries;
+        final int set = setOf(key);
+
+        final Entry first = entries[set];
+        if (first != null && first.key == key) {
+            if (first.blocked != verdict) entries[set] = new Entry(key, verdict);
+            return;
+        }
+
+        // The least recently used entry of the set is replaced.
+        final Entry second = entries[set + 1];
+        if (second != null && second.key != key) evictions.incrementAndGet();
+        entries[set + 1] = first;
+        entries[set] = new Entry(key, verdict);
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    long getEvictions() {
+        return evictions.get();
+    }
+
+    private int setOf(final long key) {
+        final int hash = (int) (key ^ (key >>> 32));
+        return (hash ^ (hash >>> 16)) & (entries.length - WAYS);
+    }
+}
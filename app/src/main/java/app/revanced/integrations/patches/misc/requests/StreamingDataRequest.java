@@ -24,9 +24,10 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import app.revanced.integrations.patches.misc.client.AppClient.ClientType;
+import app.revanced.integrations.requests.Requester;
+import app.revanced.integrations.requests.SingleFlight;
 import app.revanced.integrations.settings.SettingsEnum;
 import app.revanced.integrations.utils.Logger;
-import app.revanced.integrations.utils.ReVancedUtils;
 
 public class StreamingDataRequest {
 
@@ -74,6 +75,11 @@ public class StreamingDataRequest {
                 }
             });
 
+    /**
+     * Fetches still running, so a video requested again by another player is not fetched twice.
+     */
+    private static final SingleFlight<String, ByteBuffer> fetches = new SingleFlight<>();
+
     static {
         ClientType preferredClient = ClientType.valueOf(SettingsEnum.SPOOF_STREAMING_DATA_TYPE.getString());
         clientTypesToUse = new ClientType[allClientTypes.length];
@@ -94,7 +100,7 @@ public class StreamingDataRequest {
     private StreamingDataRequest(String videoId, Map<String, String> playerHeaders) {
         Objects.requireNonNull(playerHeaders);
         this.videoId = videoId;
-        this.future = ReVancedUtils.submitOnBackgroundThread(() -> fetch(videoId, playerHeaders));
+        this.future = fetches.submit(videoId, () -> fetch(videoId, playerHeaders));
     }
 
     public static void fetchRequest(@NonNull String videoId, Map<String, String> fetchHeaders) {
@@ -129,8 +135,9 @@ public class StreamingDataRequest {
         String clientTypeName = clientType.name();
         Logger.printDebug(() -> "Fetching video streams for: " + videoId + " using client: " + clientType.name());
 
+        HttpURLConnection connection = null;
         try {
-            HttpURLConnection connection = PlayerRoutes.getPlayerResponseConnectionFromRoute(GET_STREAMING_DATA, clientType);
+            connection = PlayerRoutes.getPlayerResponseConnectionFromRoute(GET_STREAMING_DATA, clientType);
             connection.setConnectTimeout(HTTP_TIMEOUT_MILLISECONDS);
             connection.setReadTimeout(HTTP_TIMEOUT_MILLISECONDS);
 
@@ -166,6 +173,7 @@ public class StreamingDataRequest {
             Logger.printDebug(() -> "video: " + videoId + " took: " + (System.currentTimeMillis() - startTime) + "ms");
         }
 
+        if (connection != null) Requester.disconnect(connection);
         return null;
     }
 
@@ -180,6 +188,7 @@ public class StreamingDataRequest {
                     // gzip encoding doesn't response with content length (-1),
                     // but empty response body does.
                     if (connection.getContentLength() != 0) {
+                        ByteBuffer response;
                         try (InputStream inputStream = new BufferedInputStream(connection.getInputStream())) {
                             try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
                                 byte[] buffer = new byte[8192];
@@ -187,14 +196,18 @@ public class StreamingDataRequest {
                                 while ((bytesRead = inputStream.read(buffer)) >= 0) {
                                     baos.write(buffer, 0, bytesRead);
                                 }
-                                lastSpoofedClientType = clientType;
-
-                                return ByteBuffer.wrap(baos.toByteArray());
+                                response = ByteBuffer.wrap(baos.toByteArray());
                             }
                         }
+                        // The body was read to the end, nothing is left to drain.
+                        Requester.releaseConnection(connection, false);
+                        lastSpoofedClientType = clientType;
+                        return response;
                     }
+                    Requester.releaseConnection(connection);
                 } catch (IOException ex) {
                     Logger.printException(() -> "Fetch failed while processing response data", ex);
+                    Requester.disconnect(connection);
                 }
             }
         }
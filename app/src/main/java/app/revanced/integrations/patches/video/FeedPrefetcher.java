@@ -0,0 +1,187 @@
+package app.revanced.integrations.patches.video;
+
+import androidx.annotation.GuardedBy;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import app.revanced.integrations.returnyoutubedislike.ReturnYouTubeDislike;
+import app.revanced.integrations.settings.SettingsEnum;
+import app.revanced.integrations.sponsorblock.PlayerController;
+import app.revanced.integrations.sponsorblock.requests.SBRequester;
+import app.revanced.integrations.utils.LogHelper;
+
+/**
+ * Prefetches the SponsorBlock segments and RYD votes of the videos shown in the feed,
+ * so opening one of them needs no request.
+ * <p>
+ * Video ids are found in the thumbnail urls of the feed video components, as they pass through the Litho filter.
+ * Each id is fetched once, on a single low priority thread, and at most {@link #MAX_FETCHES_PER_MINUTE} per minute.
+ * Only the most recent ids wait for a fetch, as older ones have likely been scrolled past.
+ */
+public final class FeedPrefetcher {
+    private static final int MAX_FETCHES_PER_MINUTE = 20;
+    private static final int MAX_PENDING = 16;
+    /**
+     * Ids remembered, so videos shown again are not fetched again.
+     */
+    private static final int MAX_SEEN = 512;
+
+    /**
+     * Thumbnail url parts before the video id, such as {@code https://i.ytimg.com/vi/<id>/hqdefault.jpg}.
+     */
+    private static final byte[][] THUMBNAIL_URL_MARKERS = {
+            "/vi/".getBytes(),
+            "/vi_webp/".getBytes()
+    };
+    private static final int VIDEO_ID_LENGTH = 11;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "revanced-feed-prefetch");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Object lock = new Object();
+    @GuardedBy("lock")
+    private static final ArrayDeque<String> pending = new ArrayDeque<>();
+    @GuardedBy("lock")
+    private static final LinkedHashMap<String, Boolean> seen = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_SEEN;
+        }
+    };
+    @GuardedBy("lock")
+    private static boolean draining;
+    /**
+     * Start times of the fetches of the last minute, oldest first. Only used by the prefetch thread.
+     */
+    private static final long[] fetchTimes = new long[MAX_FETCHES_PER_MINUTE];
+    private static int fetchCount;
+
+    /**
+     * Last buffer searched, as all components of a feed video can share it.
+     */
+    private static volatile ByteBuffer lastBuffer;
+
+    private FeedPrefetcher() {
+    }
+
+    /**
+     * @return If prefetching is enabled, and any of SponsorBlock and RYD is enabled.
+     */
+    public static boolean isEnabled() {
+        return SettingsEnum.PREFETCH_FEED_VIDEOS.getBoolean()
+                && (SettingsEnum.SB_ENABLED.getBoolean() || SettingsEnum.RYD_ENABLED.getBoolean());
+    }
+
+    /**
+     * Find the video id of a feed video component, and queue it for prefetching.
+     * Called on the component build thread, so only searches the buffer.
+     */
+    public static void onFeedVideoComponent(ByteBuffer buffer) {
+        if (buffer == null || buffer == lastBuffer) return;
+        lastBuffer = buffer;
+
+        String videoId = findVideoId(buffer);
+        if (videoId != null) offer(videoId);
+    }
+
+    /**
+     * Queue a video for prefetching, unless it was queued before.
+     */
+    public static void offer(String videoId) {
+        synchronized (lock) {
+            if (seen.put(videoId, Boolean.TRUE) != null) return;
+
+            pending.addLast(videoId);
+            if (pending.size() > MAX_PENDING) pending.removeFirst();
+
+            if (!draining) {
+                draining = true;
+                executor.execute(FeedPrefetcher::drain);
+            }
+        }
+    }
+
+    private static void drain() {
+        while (true) {
+            String videoId;
+            synchronized (lock) {
+                // Newest first, as it is the most likely to still be on screen.
+                videoId = pending.pollLast();
+                if (videoId == null) {
+                    draining = false;
+                    return;
+                }
+            }
+
+            if (!isEnabled() || videoId.equals(PlayerController.getCurrentVideoId())) continue;
+            try {
+                waitForBudget();
+
+                SBRequester.prefetchSegments(videoId);
+                ReturnYouTubeDislike.prefetchVotes(videoId);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                synchronized (lock) {
+                    draining = false;
+                }
+                return;
+            } catch (Exception ex) {
+                LogHelper.printException(FeedPrefetcher.class, "Failed to prefetch video: " + videoId, ex);
+            }
+        }
+    }
+
+    /**
+     * Wait until fewer than {@link #MAX_FETCHES_PER_MINUTE} fetches started in the last minute,
+     * and record the start of a fetch.
+     */
+    private static void waitForBudget() throws InterruptedException {
+        if (fetchCount == MAX_FETCHES_PER_MINUTE) {
+            final long waitMillis = fetchTimes[0] + 60 * 1000 - System.currentTimeMillis();
+            if (waitMillis > 0) Thread.sleep(waitMillis);
+            System.arraycopy(fetchTimes, 1, fetchTimes, 0, MAX_FETCHES_PER_MINUTE - 1);
+            fetchCount--;
+        }
+        fetchTimes[fetchCount++] = System.currentTimeMillis();
+    }
+
+    /**
+     * @return The video id of the first thumbnail url in the buffer, or null if none is found.
+     */
+    static String findVideoId(ByteBuffer buffer) {
+        final int end = buffer.limit();
+        for (byte[] marker : THUMBNAIL_URL_MARKERS) {
+            final int lastStart = end - marker.length - VIDEO_ID_LENGTH - 1;
+            search:
+            for (int i = buffer.position(); i <= lastStart; i++) {
+                for (int j = 0; j < marker.length; j++) {
+                    if (buffer.get(i + j) != marker[j]) continue search;
+                }
+
+                final int idStart = i + marker.length;
+                if (buffer.get(idStart + VIDEO_ID_LENGTH) != '/') continue;
+                char[] id = new char[VIDEO_ID_LENGTH];
+                for (int k = 0; k < VIDEO_ID_LENGTH; k++) {
+                    final byte b = buffer.get(idStart + k);
+                    if (!isVideoIdCharacter(b)) continue search;
+                    id[k] = (char) b;
+                }
+                return new String(id);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isVideoIdCharacter(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '-' || b == '_';
+    }
+}
@@ -7,6 +7,7 @@ import android.widget.Toast;
 import app.revanced.integrations.settings.SettingsEnum;
 import app.revanced.integrations.sponsorblock.PlayerController;
 import app.revanced.integrations.utils.ReVancedUtils;
+import app.revanced.integrations.utils.ReflectionCache;
 
 public class VideoInformation {
     private static String currentVideoId;
@@ -18,6 +19,8 @@ public class VideoInformation {
     private static Method seekMethod;
 
     private static final String SEEK_METHOD_NAME = "seekTo";
+    private static final ReflectionCache.MethodAccessor seekMethodAccessor =
+            new ReflectionCache.MethodAccessor(SEEK_METHOD_NAME, Long.TYPE);
 
     // Call hook in the YT code when the video changes
     public static void setCurrentVideoId(final String videoId) {
@@ -55,8 +58,7 @@ public class VideoInformation {
         PlayerController.initialize();
 
         try {
-            seekMethod = object.getClass().getMethod(SEEK_METHOD_NAME, Long.TYPE);
-            seekMethod.setAccessible(true);
+            seekMethod = seekMethodAccessor.resolve(object.getClass());
         } catch (NoSuchMethodException ignored) {}
     }
 
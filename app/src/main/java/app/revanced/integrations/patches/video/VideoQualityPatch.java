@@ -8,7 +8,6 @@ import android.net.NetworkInfo;
 import android.widget.Toast;
 
 import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Objects;
@@ -16,6 +15,7 @@ import java.util.Objects;
 import app.revanced.integrations.settings.SettingsEnum;
 import app.revanced.integrations.utils.LogHelper;
 import app.revanced.integrations.utils.ReVancedUtils;
+import app.revanced.integrations.utils.ReflectionCache;
 
 public class VideoQualityPatch {
 
@@ -24,6 +24,12 @@ public class VideoQualityPatch {
     private static boolean userChangedQuality = false;
     private static int defaultQualityWiFi;
     private static int defaultQualityMobile;
+    private static ReflectionCache.MethodAccessor qualityIndexMethod;
+    /**
+     * Resolution fields of the stream quality class, found once instead of for every quality of every video.
+     */
+    private static Class<?> resolutionFieldsOwner;
+    private static Field[] resolutionFields;
 
     public static void changeDefaultQuality(int defaultQuality) {
         if (SettingsEnum.ENABLE_SAVE_VIDEO_QUALITY.getBoolean()) {
@@ -58,17 +64,11 @@ public class VideoQualityPatch {
 
         if (!(newVideo || userChangedQuality) || qInterface == null) return quality;
 
-        Class<?> intType = Integer.TYPE;
         ArrayList<Integer> iStreamQualities = new ArrayList<>();
         try {
             for (Object streamQuality : qualities) {
-                for (Field field : streamQuality.getClass().getFields()) {
-                    if (field.getType().isAssignableFrom(intType)) {  // converts quality index to actual readable resolution
-                        int value = field.getInt(streamQuality);
-                        if (field.getName().length() <= 2) {
-                            iStreamQualities.add(value);
-                        }
-                    }
+                for (Field field : getResolutionFields(streamQuality.getClass())) {
+                    iStreamQualities.add(field.getInt(streamQuality));
                 }
             }
         } catch (Exception ignored) {
@@ -109,9 +109,12 @@ public class VideoQualityPatch {
 
         int qualityIndex = iStreamQualities.indexOf(quality);
         try {
-            Class<?> cl = qInterface.getClass();
-            Method m = cl.getMethod(qIndexMethod, Integer.TYPE);
-            m.invoke(qInterface, iStreamQualities.get(qualityIndex));
+            ReflectionCache.MethodAccessor accessor = qualityIndexMethod;
+            if (accessor == null || !accessor.getName().equals(qIndexMethod)) {
+                accessor = new ReflectionCache.MethodAccessor(qIndexMethod, Integer.TYPE);
+                qualityIndexMethod = accessor;
+            }
+            accessor.invoke(qInterface, iStreamQualities.get(qualityIndex));
             return qualityIndex;
         } catch (Exception ex) {
             LogHelper.printException(VideoQualityPatch.class, "Failed to set quality", ex);
@@ -120,6 +123,23 @@ public class VideoQualityPatch {
         }
     }
 
+    /**
+     * @return The int fields with short names of the stream quality class, which hold the resolution.
+     */
+    private static synchronized Field[] getResolutionFields(Class<?> streamQualityClass) {
+        if (streamQualityClass == resolutionFieldsOwner) return resolutionFields;
+
+        ArrayList<Field> fields = new ArrayList<>();
+        for (Field field : streamQualityClass.getFields()) {
+            if (field.getType().isAssignableFrom(Integer.TYPE) && field.getName().length() <= 2) {
+                fields.add(field);
+            }
+        }
+        resolutionFields = fields.toArray(new Field[0]);
+        resolutionFieldsOwner = streamQualityClass;
+        return resolutionFields;
+    }
+
     public static void userChangedQuality(int selectedQuality) {
         selectedQuality1 = selectedQuality;
         userChangedQuality = true;
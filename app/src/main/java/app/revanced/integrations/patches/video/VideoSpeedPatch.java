@@ -7,9 +7,18 @@ public class VideoSpeedPatch {
     private static boolean newVideo = false;
     private static boolean userChangedSpeed = false;
     private static String currentContentCpn;
+    /**
+     * Last speed set by the user or by the default speed, used to time segment skips.
+     */
+    private static volatile float playbackSpeed = 1.0f;
 
     public static void userChangedSpeed(float speed) {
         userChangedSpeed = true;
+        if (speed > 0) playbackSpeed = speed;
+    }
+
+    public static float getPlaybackSpeed() {
+        return playbackSpeed;
     }
 
     public static float getSpeedValue() {
@@ -22,6 +31,7 @@ public class VideoSpeedPatch {
         if (defaultSpeed == -2.0f) return -1.0f;
         else if (!isCustomVideoSpeedEnabled() && defaultSpeed >= 2.0f) defaultSpeed = 2.0f;
 
+        playbackSpeed = defaultSpeed;
         return defaultSpeed;
     }
 
@@ -0,0 +1,301 @@
+package app.revanced.integrations.requests;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import app.revanced.integrations.utils.LogHelper;
+
+/**
+ * Shared HTTP client of all API requests, used through {@link Requester}.
+ * <p>
+ * The platform {@link HttpURLConnection} keeps idle connections alive per host and reuses them,
+ * but only if the response body is read to the end and the connection is not disconnected.
+ * Requests are therefore finished with {@link #release(HttpURLConnection, boolean)},
+ * which keeps the connection, and only failed requests with {@link #disconnect(HttpURLConnection)}.
+ * <p>
+ * Each host has a limit of concurrent requests and default timeouts.
+ * Callers can still set other timeouts on the connection.
+ */
+public final class HttpClient {
+    private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+    private static final int DEFAULT_CONNECT_TIMEOUT_MILLISECONDS = 10 * 1000;
+    private static final int DEFAULT_READ_TIMEOUT_MILLISECONDS = 10 * 1000;
+
+    /**
+     * How long the platform keeps an idle connection alive.
+     */
+    private static final long KEEP_ALIVE_MILLISECONDS = 5 * 60 * 1000;
+    /**
+     * Idle connections kept per host by the platform.
+     */
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    /**
+     * Largest unread response body drained to keep the connection, instead of disconnecting.
+     */
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+    /**
+     * Extra time after the timeouts of a connection, until a request that was never finished is given up.
+     */
+    private static final long ABANDONED_GRACE_MILLISECONDS = 10 * 1000;
+
+    private static final Map<String, Host> hosts = new HashMap<>();
+    /**
+     * Connections not yet finished, and the time they were opened.
+     */
+    private static final Map<HttpURLConnection, Request> requests = new IdentityHashMap<>();
+
+    static {
+        configure("sponsor.ajay.app", 2, 5 * 1000, 10 * 1000);
+        configure("sponsorblock.hankmccord.dev", 2, 5 * 1000, 10 * 1000);
+        configure("returnyoutubedislikeapi.com", 4, 2 * 1000, 4 * 1000);
+        configure("youtubei.googleapis.com", 3, 10 * 1000, 10 * 1000);
+    }
+
+    private HttpClient() {
+    }
+
+    /**
+     * Set the limits of a host. Hosts not configured use the defaults.
+     *
+     * @param host                   Host name, such as {@code sponsor.ajay.app}.
+     * @param maxConcurrentRequests  Number of requests to the host at once. More requests wait for a free slot.
+     * @param connectTimeoutMillis   Default TCP connection timeout.
+     * @param readTimeoutMillis      Default HTTP read timeout.
+     */
+    public static void configure(String host, int maxConcurrentRequests, int connectTimeoutMillis, int readTimeoutMillis) {
+        synchronized (hosts) {
+            hosts.put(host, new Host(host, maxConcurrentRequests, connectTimeoutMillis, readTimeoutMillis));
+        }
+    }
+
+    /**
+     * Open a connection, waiting at most the connect timeout for a free request slot of the host.
+     */
+    static HttpURLConnection open(String url, Route.Method method) throws IOException {
+        URL parsedUrl = new URL(url);
+        Host host = getHost(parsedUrl.getHost());
+
+        if (!host.acquire()) {
+            reclaimAbandoned(host);
+            if (!host.acquire()) {
+                host.rejected();
+                throw new IOException("Too many concurrent requests to: " + host.name);
+            }
+        }
+
+        HttpURLConnection connection;
+        try {
+            connection = (HttpURLConnection) parsedUrl.openConnection();
+            connection.setRequestMethod(method.name());
+            connection.setConnectTimeout(host.connectTimeoutMillis);
+            connection.setReadTimeout(host.readTimeoutMillis);
+        } catch (IOException | RuntimeException ex) {
+            host.permits.release();
+            throw ex;
+        }
+
+        host.opened();
+        synchronized (requests) {
+            requests.put(connection, new Request(host, System.currentTimeMillis()));
+        }
+        return connection;
+    }
+
+    /**
+     * Finish a request and keep its connection for the next request to the same host.
+     * Does nothing if the request was already finished.
+     *
+     * @param drain If the response body may not have been read yet, and must be read to the end first.
+     *              A large or broken body disconnects instead.
+     */
+    static void release(HttpURLConnection connection, boolean drain) {
+        Request request = finish(connection);
+        if (request == null) return;
+
+        if (drain && !drain(connection)) {
+            connection.disconnect();
+            request.host.disconnected();
+        } else {
+            request.host.released();
+        }
+        request.host.permits.release();
+    }
+
+    /**
+     * Finish a request and close its connection. Does nothing if the request was already finished.
+     */
+    static void disconnect(HttpURLConnection connection) {
+        Request request = finish(connection);
+        connection.disconnect();
+        if (request == null) return;
+
+        request.host.disconnected();
+        request.host.permits.release();
+    }
+
+    /**
+     * @return Requests, estimated reused connections, disconnects and rejected requests of each host.
+     */
+    public static String getStatistics() {
+        StringBuilder builder = new StringBuilder();
+        synchronized (hosts) {
+            for (Host host : hosts.values()) {
+                builder.append(host).append('\n');
+            }
+        }
+        return builder.toString();
+    }
+
+    private static Host getHost(String name) {
+        synchronized (hosts) {
+            Host host = hosts.get(name);
+            if (host == null) {
+                host = new Host(name, DEFAULT_MAX_CONCURRENT_REQUESTS,
+                        DEFAULT_CONNECT_TIMEOUT_MILLISECONDS, DEFAULT_READ_TIMEOUT_MILLISECONDS);
+                hosts.put(name, host);
+            }
+            return host;
+        }
+    }
+
+    private static Request finish(HttpURLConnection connection) {
+        synchronized (requests) {
+            return requests.remove(connection);
+        }
+    }
+
+    /**
+     * Give up requests of the host which were never finished, such as after an exception,
+     * once their timeouts have long passed.
+     */
+    private static void reclaimAbandoned(Host host) {
+        final long now = System.currentTimeMillis();
+        ArrayList<HttpURLConnection> abandoned = new ArrayList<>();
+        synchronized (requests) {
+            for (Map.Entry<HttpURLConnection, Request> entry : requests.entrySet()) {
+                HttpURLConnection connection = entry.getKey();
+                Request request = entry.getValue();
+                final long maxDuration = connection.getConnectTimeout() + connection.getReadTimeout()
+                        + ABANDONED_GRACE_MILLISECONDS;
+                if (request.host == host && now - request.openedMillis > maxDuration) {
+                    abandoned.add(connection);
+                }
+            }
+        }
+        for (HttpURLConnection connection : abandoned) {
+            LogHelper.info(HttpClient.class, "Reclaiming unfinished request to: " + host.name);
+            disconnect(connection);
+        }
+    }
+
+    /**
+     * Read the rest of the response body, so the connection can be reused.
+     *
+     * @return If the body was read to the end.
+     */
+    private static boolean drain(HttpURLConnection connection) {
+        try {
+            InputStream stream = connection.getResponseCode() >= 400
+                    ? connection.getErrorStream()
+                    : connection.getInputStream();
+            if (stream == null) return true;
+
+            try (InputStream input = stream) {
+                byte[] buffer = new byte[4096];
+                int total = 0;
+                int read;
+                while ((read = input.read(buffer)) >= 0) {
+                    total += read;
+                    if (total > MAX_DRAIN_BYTES) return false;
+                }
+            }
+            return true;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    private static final class Request {
+        final Host host;
+        final long openedMillis;
+
+        Request(Host host, long openedMillis) {
+            this.host = host;
+            this.openedMillis = openedMillis;
+        }
+    }
+
+    private static final class Host {
+        final String name;
+        final int connectTimeoutMillis;
+        final int readTimeoutMillis;
+        final Semaphore permits;
+
+        // Statistics, guarded by this.
+        private long requests;
+        /**
+         * Estimated from {@link #idle}, as the platform does not tell if a connection was reused.
+         */
+        private long reused;
+        private long disconnects;
+        private long rejects;
+        /**
+         * Estimated idle connections kept alive by the platform.
+         */
+        private int idle;
+        private long lastReleaseMillis;
+
+        Host(String name, int maxConcurrentRequests, int connectTimeoutMillis, int readTimeoutMillis) {
+            this.name = name;
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            this.readTimeoutMillis = readTimeoutMillis;
+            this.permits = new Semaphore(maxConcurrentRequests, true);
+        }
+
+        boolean acquire() {
+            try {
+                return permits.tryAcquire(connectTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        synchronized void opened() {
+            requests++;
+            if (idle > 0 && System.currentTimeMillis() - lastReleaseMillis < KEEP_ALIVE_MILLISECONDS) {
+                idle--;
+                reused++;
+            } else {
+                idle = 0;
+            }
+        }
+
+        synchronized void released() {
+            idle = Math.min(idle + 1, MAX_IDLE_CONNECTIONS);
+            lastReleaseMillis = System.currentTimeMillis();
+        }
+
+        synchronized void disconnected() {
+            disconnects++;
+        }
+
+        synchronized void rejected() {
+            rejects++;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return name + " requests: " + requests + " est. reused: " + reused
+                    + " disconnects: " + disconnects + " rejected: " + rejects;
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package app.revanced.integrations.requests;
 
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -9,29 +13,71 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
-import java.net.URL;
+import java.nio.charset.StandardCharsets;
 
 public class Requester {
     private Requester() {
     }
 
+    /**
+     * Reads the values it needs from a JSON response, and skips the others.
+     */
+    public interface JsonResponseParser<T> {
+        T parse(JsonReader reader) throws IOException;
+    }
+
     public static HttpURLConnection getConnectionFromRoute(String apiUrl, Route route, String... params) throws IOException {
         return getConnectionFromCompiledRoute(apiUrl, route.compile(params));
     }
 
     public static HttpURLConnection getConnectionFromCompiledRoute(String apiUrl, Route.CompiledRoute route) throws IOException {
-        String url = apiUrl + route.getCompiledRoute();
-        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
-        connection.setRequestMethod(route.getMethod().name());
+        return HttpClient.open(apiUrl + route.getCompiledRoute(), route.getMethod());
+    }
 
-        return connection;
+    /**
+     * Finish the request, and keep the connection for the next request to the same server.
+     * Any unread response is read first. Does nothing if the request was already finished.
+     * <p>
+     * Every connection from this class must be finished with this or {@link #disconnect(HttpURLConnection)},
+     * otherwise it keeps a request slot of the server until its timeouts have long passed.
+     */
+    public static void releaseConnection(HttpURLConnection connection) {
+        HttpClient.release(connection, true);
     }
 
     /**
-     * Parse the {@link HttpURLConnection}, and closes the underlying InputStream.
+     * Finish the request, and keep the connection for the next request to the same server.
+     * Does nothing if the request was already finished.
+     *
+     * @param drain If the response body may not have been read to the end, and must be read first.
+     *              False if the body was read to the end and its stream closed,
+     *              as the stream can then no longer be read.
+     */
+    public static void releaseConnection(HttpURLConnection connection, boolean drain) {
+        HttpClient.release(connection, drain);
+    }
+
+    /**
+     * Finish the request and close the connection.
+     *
+     * <b>Should only be used if the request failed, or other requests to the server are unlikely in the near future</b>
+     */
+    public static void disconnect(HttpURLConnection connection) {
+        HttpClient.disconnect(connection);
+    }
+
+    /**
+     * Parse the {@link HttpURLConnection}, close the underlying InputStream, and release the connection.
      */
     public static String parseJson(HttpURLConnection connection) throws IOException {
-        return parseInputStreamAndClose(connection.getInputStream(), true);
+        try {
+            String result = parseInputStreamAndClose(connection.getInputStream(), true);
+            HttpClient.release(connection, false);
+            return result;
+        } catch (IOException ex) {
+            HttpClient.disconnect(connection);
+            throw ex;
+        }
     }
 
     /**
@@ -53,10 +99,45 @@ public class Requester {
     }
 
     /**
-     * Parse the {@link HttpURLConnection}, and closes the underlying InputStream.
+     * Parse the {@link HttpURLConnection} while it is read, close the underlying InputStream, and release the connection.
+     * Unlike {@link #parseJSONObject(HttpURLConnection)}, the response is never copied into a String
+     * and no {@link JSONObject} of values not needed is built.
+     *
+     * @throws IOException on network errors, or if the JSON is malformed or has values of unexpected types.
+     */
+    public static <T> T parseJsonStream(HttpURLConnection connection, JsonResponseParser<T> parser) throws IOException {
+        try {
+            T result;
+            try (JsonReader reader = new JsonReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+                result = parser.parse(reader);
+                // Read to the end, so the connection can be reused.
+                if (reader.peek() != JsonToken.END_DOCUMENT) {
+                    throw new MalformedJsonException("Unexpected JSON after the response value");
+                }
+            }
+            HttpClient.release(connection, false);
+            return result;
+        } catch (IllegalStateException | NumberFormatException ex) {
+            HttpClient.disconnect(connection);
+            throw new MalformedJsonException(ex.getMessage());
+        } catch (IOException ex) {
+            HttpClient.disconnect(connection);
+            throw ex;
+        }
+    }
+
+    /**
+     * Parse the {@link HttpURLConnection}, close the underlying InputStream, and release the connection.
      */
     public static String parseErrorJson(HttpURLConnection connection) throws IOException {
-        return parseInputStreamAndClose(connection.getErrorStream(), false);
+        try {
+            String result = parseInputStreamAndClose(connection.getErrorStream(), false);
+            HttpClient.release(connection, false);
+            return result;
+        } catch (IOException ex) {
+            HttpClient.disconnect(connection);
+            throw ex;
+        }
     }
 
     /**
@@ -67,13 +148,15 @@ public class Requester {
      * @see #parseErrorJson(HttpURLConnection)
      */
     public static String parseErrorJsonAndDisconnect(HttpURLConnection connection) throws IOException {
-        String result = parseErrorJson(connection);
-        connection.disconnect();
-        return result;
+        try {
+            return parseInputStreamAndClose(connection.getErrorStream(), false);
+        } finally {
+            HttpClient.disconnect(connection);
+        }
     }
 
     /**
-     * Parse the {@link HttpURLConnection}, and closes the underlying InputStream.
+     * Parse the {@link HttpURLConnection}, close the underlying InputStream, and release the connection.
      */
     public static JSONObject parseJSONObject(HttpURLConnection connection) throws JSONException, IOException {
         return new JSONObject(parseJson(connection));
@@ -87,13 +170,11 @@ public class Requester {
      * @see #parseJSONObject(HttpURLConnection)
      */
     public static JSONObject parseJSONObjectAndDisconnect(HttpURLConnection connection) throws JSONException, IOException {
-        JSONObject object = parseJSONObject(connection);
-        connection.disconnect();
-        return object;
+        return new JSONObject(parseJsonAndDisconnect(connection));
     }
 
     /**
-     * Parse the {@link HttpURLConnection}, and closes the underlying InputStream.
+     * Parse the {@link HttpURLConnection}, close the underlying InputStream, and release the connection.
      */
     public static JSONArray parseJSONArray(HttpURLConnection connection) throws JSONException, IOException  {
         return new JSONArray(parseJson(connection));
@@ -107,9 +188,19 @@ public class Requester {
      * @see #parseJSONArray(HttpURLConnection)
      */
     public static JSONArray parseJSONArrayAndDisconnect(HttpURLConnection connection) throws JSONException, IOException  {
-        JSONArray array = parseJSONArray(connection);
-        connection.disconnect();
-        return array;
+        return new JSONArray(parseJsonAndDisconnect(connection));
+    }
+
+    /**
+     * Parse the {@link HttpURLConnection}, close the underlying InputStream, and disconnect.
+     * The request is finished only by the disconnect, so the connection is not counted as kept.
+     */
+    private static String parseJsonAndDisconnect(HttpURLConnection connection) throws IOException {
+        try {
+            return parseInputStreamAndClose(connection.getInputStream(), true);
+        } finally {
+            HttpClient.disconnect(connection);
+        }
     }
 
 }
\ No newline at end of file
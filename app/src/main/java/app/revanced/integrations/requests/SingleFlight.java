@@ -0,0 +1,88 @@
+package app.revanced.integrations.requests;
+
+import androidx.annotation.GuardedBy;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import app.revanced.integrations.utils.ReVancedUtils;
+
+/**
+ * Shares one call between everyone asking for the same key while the call runs,
+ * such as the main player, the miniplayer and Shorts all loading the same video.
+ * <p>
+ * A call is forgotten once it finishes, so a later call for the key runs again.
+ * Keeping results is left to the caches of each API.
+ *
+ * @param <K> Key of a call, such as a video id.
+ * @param <V> Result of a call.
+ */
+public final class SingleFlight<K, V> {
+    @GuardedBy("inFlight")
+    private final Map<K, Call> inFlight = new HashMap<>();
+
+    private final class Call extends FutureTask<V> {
+        private final K key;
+
+        Call(K key, Callable<V> callable) {
+            super(callable);
+            this.key = key;
+        }
+
+        @Override
+        protected void done() {
+            synchronized (inFlight) {
+                if (inFlight.get(key) == this) inFlight.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Run the call on the calling thread, or wait for the call for the same key already running.
+     *
+     * @return The result of the call, which may be shared with other callers.
+     * @throws Exception The exception thrown by the call.
+     */
+    public V execute(K key, Callable<V> callable) throws Exception {
+        Call call;
+        boolean started = false;
+        synchronized (inFlight) {
+            call = inFlight.get(key);
+            if (call == null) {
+                call = new Call(key, callable);
+                inFlight.put(key, call);
+                started = true;
+            }
+        }
+        if (started) call.run();
+
+        try {
+            return call.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw ex;
+        }
+    }
+
+    /**
+     * Start the call on a background thread, or return the call for the same key already running.
+     */
+    public Future<V> submit(K key, Callable<V> callable) {
+        Call call;
+        synchronized (inFlight) {
+            call = inFlight.get(key);
+            if (call != null) return call;
+
+            call = new Call(key, callable);
+            inFlight.put(key, call);
+        }
+        ReVancedUtils.runOnBackgroundThread(call);
+        return call;
+    }
+}
@@ -0,0 +1,130 @@
+package app.revanced.integrations.returnyoutubedislike;
+
+import android.icu.text.CompactDecimalFormat;
+import android.os.Build;
+
+import java.text.NumberFormat;
+import java.util.Locale;
+
+import app.revanced.integrations.utils.ReVancedUtils;
+
+/**
+ * Formats dislike counts and percentages, without locks.
+ * <p>
+ * Number formatters are not thread safe, so each thread has its own, made again only if the locale changes.
+ * The like button is created many times for each video, always with the same numbers,
+ * so recently formatted numbers are remembered and returned without formatting.
+ */
+final class DislikeFormatter {
+    /**
+     * Size of each formatted number cache, a power of two.
+     */
+    private static final int CACHE_SIZE = 32;
+
+    /**
+     * An immutable formatted number, so the caches can be read and written by any thread without locks.
+     */
+    private static final class Formatted {
+        final long value;
+        final Locale locale;
+        final String text;
+
+        Formatted(long value, Locale locale, String text) {
+            this.value = value;
+            this.locale = locale;
+            this.text = text;
+        }
+    }
+
+    private static final Formatted[] formattedCounts = new Formatted[CACHE_SIZE];
+    private static final Formatted[] formattedPercentages = new Formatted[CACHE_SIZE];
+
+    private static final class Formatters {
+        final Locale locale;
+        final CompactDecimalFormat count;
+        /**
+         * Whole percentage points.
+         */
+        final NumberFormat percentage;
+        /**
+         * Up to 1 digit precision, for less than 1%.
+         */
+        final NumberFormat smallPercentage;
+
+        Formatters(Locale locale) {
+            this.locale = locale;
+            // Note: Java number formatters will use the locale specific number characters.
+            // such as Arabic which formats "1.2" into "???"
+            // But YouTube disregards locale specific number characters
+            // and instead shows english number characters everywhere.
+            count = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                    ? CompactDecimalFormat.getInstance(locale, CompactDecimalFormat.CompactStyle.SHORT)
+                    : null;
+            percentage = NumberFormat.getPercentInstance(locale);
+            percentage.setMaximumFractionDigits(0);
+            smallPercentage = NumberFormat.getPercentInstance(locale);
+            smallPercentage.setMaximumFractionDigits(1);
+        }
+    }
+
+    private static final ThreadLocal<Formatters> threadFormatters = new ThreadLocal<>();
+
+    private DislikeFormatter() {
+    }
+
+    static String formatCount(long dislikeCount) {
+        final Locale locale = getLocale();
+        Formatted formatted = lookup(formattedCounts, dislikeCount, locale);
+        if (formatted != null) return formatted.text;
+
+        CompactDecimalFormat formatter = getFormatters(locale).count;
+        // Couldn't format dislikes, using the unformatted count
+        String text = formatter == null ? String.valueOf(dislikeCount) : formatter.format(dislikeCount);
+        store(formattedCounts, new Formatted(dislikeCount, locale, text));
+        return text;
+    }
+
+    static String formatPercentage(float dislikePercentage) {
+        final Locale locale = getLocale();
+        final long key = Float.floatToIntBits(dislikePercentage);
+        Formatted formatted = lookup(formattedPercentages, key, locale);
+        if (formatted != null) return formatted.text;
+
+        Formatters formatters = getFormatters(locale);
+        String text = dislikePercentage >= 0.01 // at least 1%
+                ? formatters.percentage.format(dislikePercentage)
+                : formatters.smallPercentage.format(dislikePercentage);
+        store(formattedPercentages, new Formatted(key, locale, text));
+        return text;
+    }
+
+    private static Locale getLocale() {
+        return ReVancedUtils.getContext().getResources().getConfiguration().locale;
+    }
+
+    private static Formatters getFormatters(Locale locale) {
+        Formatters formatters = threadFormatters.get();
+        if (formatters == null || !formatters.locale.equals(locale)) {
+            formatters = new Formatters(locale);
+            threadFormatters.set(formatters);
+        }
+        return formatters;
+    }
+
+    private static Formatted lookup(Formatted[] cache, long value, Locale locale) {
+        Formatted formatted = cache[index(value)];
+        return formatted != null && formatted.value == value && formatted.locale.equals(locale) ? formatted : null;
+    }
+
+    /**
+     * Replaces whatever number had the same slot. Races between threads lose a number, which is only formatted again.
+     */
+    private static void store(Formatted[] cache, Formatted formatted) {
+        cache[index(formatted.value)] = formatted;
+    }
+
+    private static int index(long value) {
+        final long hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & (CACHE_SIZE - 1);
+    }
+}
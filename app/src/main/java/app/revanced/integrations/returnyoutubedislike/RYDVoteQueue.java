@@ -0,0 +1,219 @@
+package app.revanced.integrations.returnyoutubedislike;
+
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import app.revanced.integrations.returnyoutubedislike.requests.ReturnYouTubeDislikeApi;
+import app.revanced.integrations.settings.SettingsEnum;
+import app.revanced.integrations.utils.LogHelper;
+import app.revanced.integrations.utils.ReVancedUtils;
+
+/**
+ * Votes waiting to be sent, kept in a file so votes survive the app being closed.
+ * <p>
+ * Votes are sent one by one, in the same order the user created them, on a single thread.
+ * A vote that fails is sent again after a delay that doubles with each failure,
+ * and the votes after it wait for it. A newer vote for the same video replaces the waiting vote.
+ * <p>
+ * The user is registered soon after the app starts, so the first vote does not wait for the registration.
+ */
+final class RYDVoteQueue {
+    private static final String FILE_NAME = "ryd_pending_votes";
+    private static final int FILE_VERSION = 1;
+
+    private static final long STARTUP_DELAY_SECONDS = 10;
+    private static final long MIN_RETRY_DELAY_SECONDS = 30;
+    private static final long MAX_RETRY_DELAY_SECONDS = 60 * 60;
+    /**
+     * Votes not sent after this long are dropped, as the user may no longer care about them.
+     */
+    private static final long MAX_VOTE_AGE_MILLISECONDS = 7 * 24 * 60 * 60 * 1000L;
+
+    /**
+     * The only thread using the fields below.
+     */
+    private static final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "ryd-vote-queue");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final AtomicBoolean started = new AtomicBoolean();
+
+    private static final class PendingVote {
+        final String videoId;
+        final ReturnYouTubeDislike.Vote vote;
+        final long createdMillis;
+
+        PendingVote(String videoId, ReturnYouTubeDislike.Vote vote, long createdMillis) {
+            this.videoId = videoId;
+            this.vote = vote;
+            this.createdMillis = createdMillis;
+        }
+    }
+
+    @Nullable
+    private static ArrayDeque<PendingVote> votes;
+    @Nullable
+    private static ScheduledFuture<?> scheduledRetry;
+    private static long retryDelaySeconds = MIN_RETRY_DELAY_SECONDS;
+
+    private RYDVoteQueue() {
+    }
+
+    /**
+     * Register the user and send the votes left from a previous run, a little after startup.
+     * Only the first call does anything.
+     */
+    static void start() {
+        if (!started.compareAndSet(false, true)) return;
+        executor.schedule(RYDVoteQueue::drain, STARTUP_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Queue a vote, and send it as soon as the votes before it are sent. Can be called on any thread.
+     */
+    static void add(String videoId, ReturnYouTubeDislike.Vote vote) {
+        final long createdMillis = System.currentTimeMillis();
+        executor.execute(() -> {
+            ArrayDeque<PendingVote> queue = getVotes();
+            for (Iterator<PendingVote> iterator = queue.iterator(); iterator.hasNext(); ) {
+                if (iterator.next().videoId.equals(videoId)) iterator.remove();
+            }
+            queue.addLast(new PendingVote(videoId, vote, createdMillis));
+            write(queue);
+
+            // Send now, instead of waiting for a scheduled retry.
+            retryDelaySeconds = MIN_RETRY_DELAY_SECONDS;
+            drain();
+        });
+    }
+
+    private static void drain() {
+        try {
+            if (scheduledRetry != null) {
+                scheduledRetry.cancel(false);
+                scheduledRetry = null;
+            }
+            if (!SettingsEnum.RYD_ENABLED.getBoolean()) return;
+
+            String userId = getUserId();
+            if (userId == null) {
+                scheduleRetry();
+                return;
+            }
+
+            ArrayDeque<PendingVote> queue = getVotes();
+            while (!queue.isEmpty()) {
+                PendingVote pending = queue.peekFirst();
+                if (System.currentTimeMillis() - pending.createdMillis < MAX_VOTE_AGE_MILLISECONDS
+                        && !ReturnYouTubeDislikeApi.sendVote(pending.videoId, userId, pending.vote)) {
+                    scheduleRetry();
+                    return;
+                }
+                queue.removeFirst();
+                write(queue);
+            }
+            retryDelaySeconds = MIN_RETRY_DELAY_SECONDS;
+        } catch (Exception ex) {
+            LogHelper.printException(RYDVoteQueue.class, "Failed to send votes", ex);
+            scheduleRetry();
+        }
+    }
+
+    private static void scheduleRetry() {
+        LogHelper.info(RYDVoteQueue.class, "Sending votes again in: " + retryDelaySeconds + " seconds");
+        scheduledRetry = executor.schedule(RYDVoteQueue::drain, retryDelaySeconds, TimeUnit.SECONDS);
+        retryDelaySeconds = Math.min(retryDelaySeconds * 2, MAX_RETRY_DELAY_SECONDS);
+    }
+
+    /**
+     * @return ReturnYouTubeDislike user ID, registering the user if never registered before.
+     * Returns NULL if the registration failed.
+     */
+    @Nullable
+    private static String getUserId() {
+        String userId = SettingsEnum.RYD_USER_ID.getString();
+        if (userId != null) {
+            return userId;
+        }
+
+        userId = ReturnYouTubeDislikeApi.registerAsNewUser(); // blocks until network call is completed
+        if (userId != null) {
+            SettingsEnum.RYD_USER_ID.saveValue(userId);
+        }
+        return userId;
+    }
+
+    private static ArrayDeque<PendingVote> getVotes() {
+        if (votes != null) return votes;
+
+        votes = new ArrayDeque<>();
+        File file = getFile();
+        if (file == null || !file.isFile()) return votes;
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != FILE_VERSION) throw new IOException("Unexpected pending votes file version");
+            final int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                final String videoId = input.readUTF();
+                final String vote = input.readUTF();
+                final long createdMillis = input.readLong();
+                votes.addLast(new PendingVote(videoId, ReturnYouTubeDislike.Vote.valueOf(vote), createdMillis));
+            }
+        } catch (IOException | IllegalArgumentException ex) {
+            LogHelper.printException(RYDVoteQueue.class, "Failed to read pending votes", ex);
+            votes.clear();
+        }
+        return votes;
+    }
+
+    private static void write(ArrayDeque<PendingVote> queue) {
+        File file = getFile();
+        if (file == null) return;
+
+        File temporary = new File(file.getPath() + ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                output.writeInt(FILE_VERSION);
+                output.writeInt(queue.size());
+                for (PendingVote pending : queue) {
+                    output.writeUTF(pending.videoId);
+                    output.writeUTF(pending.vote.name());
+                    output.writeLong(pending.createdMillis);
+                }
+            }
+            if (!temporary.renameTo(file)) throw new IOException("Failed to rename: " + temporary);
+        } catch (IOException ex) {
+            LogHelper.printException(RYDVoteQueue.class, "Failed to write pending votes", ex);
+            //noinspection ResultOfMethodCallIgnored
+            temporary.delete();
+        }
+    }
+
+    /**
+     * @return The file in the app files directory, as the cache directory may be cleared by the system.
+     */
+    @Nullable
+    private static File getFile() {
+        Context context = ReVancedUtils.getContext();
+        return context == null ? null : new File(context.getFilesDir(), FILE_NAME);
+    }
+}
@@ -3,7 +3,6 @@ package app.revanced.integrations.returnyoutubedislike;
 import static app.revanced.integrations.utils.StringRef.str;
 
 import android.content.Context;
-import android.icu.text.CompactDecimalFormat;
 import android.os.Build;
 import android.text.Spannable;
 import android.text.SpannableString;
@@ -18,16 +17,17 @@ import android.text.style.ScaleXSpan;
 import androidx.annotation.GuardedBy;
 import androidx.annotation.Nullable;
 
-import java.text.NumberFormat;
-import java.util.Locale;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
 
+import app.revanced.integrations.returnyoutubedislike.requests.RYDVoteCache;
 import app.revanced.integrations.returnyoutubedislike.requests.RYDVoteData;
 import app.revanced.integrations.returnyoutubedislike.requests.ReturnYouTubeDislikeApi;
 import app.revanced.integrations.settings.SettingsEnum;
@@ -38,17 +38,13 @@ import app.revanced.integrations.utils.ThemeHelper;
 
 public class ReturnYouTubeDislike {
     /**
-     * Maximum amount of time to block the UI from updates while waiting for network call to complete.
+     * Upper limit of {@link SettingsEnum#RYD_MAX_WAIT_MILLISECONDS},
+     * the time to block the UI while waiting for the votes to be fetched.
      * <p>
      * Must be less than 5 seconds, as per:
      * https://developer.android.com/topic/performance/vitals/anr
      */
-    private static final long MILLISECONDS_TO_BLOCK_UI_WHILE_WAITING_FOR_FETCH_VOTES_TO_COMPLETE = 4000;
-
-    /**
-     * Used to send votes, one by one, in the same order the user created them
-     */
-    private static final ExecutorService voteSerialExecutor = Executors.newSingleThreadExecutor();
+    public static final long MAX_MILLISECONDS_TO_BLOCK_UI_WHILE_WAITING_FOR_FETCH_VOTES_TO_COMPLETE = 4000;
 
     // Must be volatile, since this is read/write from different threads
     private static volatile boolean isEnabled = SettingsEnum.RYD_ENABLED.getBoolean();
@@ -66,7 +62,43 @@ public class ReturnYouTubeDislike {
      * Stores the results of the vote api fetch, and used as a barrier to wait until fetch completes
      */
     @GuardedBy("videoIdLockObject")
-    private static Future<RYDVoteData> voteFetchFuture;
+    private static VoteFetch voteFetchFuture;
+
+    /**
+     * Vote fetch of a video, which updates the dislikes of components created before the fetch completed.
+     */
+    private static final class VoteFetch extends FutureTask<RYDVoteData> {
+        /**
+         * Text of like/dislike components that stopped waiting for this fetch, and if each is a segmented button.
+         */
+        @GuardedBy("videoIdLockObject")
+        private final Map<AtomicReference<Object>, Boolean> pendingTextRefs = new LinkedHashMap<>();
+
+        VoteFetch(Callable<RYDVoteData> callable) {
+            super(callable);
+        }
+
+        @Override
+        protected void done() {
+            Map<AtomicReference<Object>, Boolean> textRefs;
+            synchronized (videoIdLockObject) {
+                if (pendingTextRefs.isEmpty()) return;
+                textRefs = new LinkedHashMap<>(pendingTextRefs);
+                pendingTextRefs.clear();
+                // The video changed while fetching.
+                if (voteFetchFuture != this) return;
+            }
+            try {
+                RYDVoteData votingData = get();
+                if (votingData == null) return;
+                for (Map.Entry<AtomicReference<Object>, Boolean> entry : textRefs.entrySet()) {
+                    updateDislike(entry.getKey(), entry.getValue(), votingData);
+                }
+            } catch (Exception ex) {
+                LogHelper.printException(ReturnYouTubeDislike.class, "Failed to update dislikes after fetch", ex);
+            }
+        }
+    }
 
     public enum Vote {
         LIKE(1),
@@ -83,18 +115,6 @@ public class ReturnYouTubeDislike {
     private ReturnYouTubeDislike() {
     } // only static methods
 
-    /**
-     * Used to format like/dislike count.
-     */
-    @GuardedBy("ReturnYouTubeDislike.class") // not thread safe
-    private static CompactDecimalFormat dislikeCountFormatter;
-
-    /**
-     * Used to format like/dislike count.
-     */
-    @GuardedBy("ReturnYouTubeDislike.class")
-    private static NumberFormat dislikePercentageFormatter;
-
     public static void onEnabledChange(boolean enabled) {
         synchronized (videoIdLockObject) {
             isEnabled = enabled;
@@ -113,7 +133,7 @@ public class ReturnYouTubeDislike {
         }
     }
 
-    private static Future<RYDVoteData> getVoteFetchFuture() {
+    private static VoteFetch getVoteFetchFuture() {
         synchronized (videoIdLockObject) {
             return voteFetchFuture;
         }
@@ -126,17 +146,55 @@ public class ReturnYouTubeDislike {
         try {
             Objects.requireNonNull(videoId);
 
+            // Only signed in users can vote, and registering them now keeps their first vote from waiting.
+            if (isUserSignedIn()) RYDVoteQueue.start();
+
+            RYDVoteCache.CachedVotes cachedVotes = RYDVoteCache.get(videoId);
             synchronized (videoIdLockObject) {
                 currentVideoId = videoId;
-                // no need to wrap the call in a try/catch,
-                // as any exceptions are propagated out in the later Future#Get call
-                voteFetchFuture = ReVancedUtils.submitOnBackgroundThread(() -> ReturnYouTubeDislikeApi.fetchVotes(videoId));
+                if (cachedVotes != null) {
+                    VoteFetch cachedFuture = new VoteFetch(() -> cachedVotes.votes);
+                    cachedFuture.run();
+                    voteFetchFuture = cachedFuture;
+                    if (cachedVotes.isStale()) {
+                        ReVancedUtils.runOnBackgroundThread(() -> ReturnYouTubeDislikeApi.fetchVotes(videoId));
+                    }
+                } else {
+                    // no need to wrap the call in a try/catch,
+                    // as any exceptions are propagated out in the later Future#Get call
+                    VoteFetch fetch = new VoteFetch(() -> loadVotes(videoId));
+                    voteFetchFuture = fetch;
+                    ReVancedUtils.runOnBackgroundThread(fetch);
+                }
             }
         } catch (Exception ex) {
             LogHelper.printException(ReturnYouTubeDislike.class, "Failed to load new video: " + videoId, ex);
         }
     }
 
+    /**
+     * @return The votes from the cache file, fetched again in the background if stale, or else fetched now.
+     */
+    @Nullable
+    private static RYDVoteData loadVotes(String videoId) {
+        RYDVoteCache.CachedVotes cachedVotes = RYDVoteCache.getFromDisk(videoId);
+        if (cachedVotes == null) return ReturnYouTubeDislikeApi.fetchVotes(videoId);
+
+        if (cachedVotes.isStale()) {
+            ReVancedUtils.runOnBackgroundThread(() -> ReturnYouTubeDislikeApi.fetchVotes(videoId));
+        }
+        return cachedVotes.votes;
+    }
+
+    /**
+     * Fetch the votes of a video likely to be opened soon, such as a video in the feed.
+     * Must be called off the main thread.
+     */
+    public static void prefetchVotes(String videoId) {
+        if (!isEnabled || RYDVoteCache.isFresh(videoId)) return;
+        ReturnYouTubeDislikeApi.fetchVotes(videoId);
+    }
+
     /**
      * This method is sometimes called on the main thread, but it usually is called _off_ the main thread.
      * <p>
@@ -158,14 +216,15 @@ public class ReturnYouTubeDislike {
             else
                 return;
 
-            // Have to block the current thread until fetching is done
-            // There's no known way to edit the text after creation yet
+            // Block the current thread only briefly, so the dislikes are usually shown in the first layout.
+            // If the fetch takes longer, the text is updated when the fetch completes.
             RYDVoteData votingData;
+            VoteFetch fetchFuture = getVoteFetchFuture();
+            if (fetchFuture == null) return;
             try {
-                Future<RYDVoteData> fetchFuture = getVoteFetchFuture();
-                if (fetchFuture == null) return;
-                votingData = fetchFuture.get(MILLISECONDS_TO_BLOCK_UI_WHILE_WAITING_FOR_FETCH_VOTES_TO_COMPLETE, TimeUnit.MILLISECONDS);
+                votingData = fetchFuture.get(getMaxWaitMilliseconds(), TimeUnit.MILLISECONDS);
             } catch (TimeoutException e) {
+                deferDislikeUpdate(fetchFuture, textRef, isSegmentedButton);
                 return;
             }
             if (votingData == null) return;
@@ -181,13 +240,14 @@ public class ReturnYouTubeDislike {
 
         try {
 
-            // Have to block the current thread until fetching is done
-            // There's no known way to edit the text after creation yet
+            // Block the current thread only briefly.
+            // The text is returned, so it can not be updated later, but Shorts components
+            // are created again as the user swipes, and then the fetch has likely completed.
             RYDVoteData votingData;
             try {
                 Future<RYDVoteData> fetchFuture = getVoteFetchFuture();
                 if (fetchFuture == null) return textRef;
-                votingData = fetchFuture.get(MILLISECONDS_TO_BLOCK_UI_WHILE_WAITING_FOR_FETCH_VOTES_TO_COMPLETE, TimeUnit.MILLISECONDS);
+                votingData = fetchFuture.get(getMaxWaitMilliseconds(), TimeUnit.MILLISECONDS);
             } catch (TimeoutException e) {
                 return textRef;
             }
@@ -200,56 +260,52 @@ public class ReturnYouTubeDislike {
         }
     }
 
+    private static long getMaxWaitMilliseconds() {
+        return Math.max(0, Math.min(SettingsEnum.RYD_MAX_WAIT_MILLISECONDS.getInt(),
+                MAX_MILLISECONDS_TO_BLOCK_UI_WHILE_WAITING_FOR_FETCH_VOTES_TO_COMPLETE));
+    }
+
+    /**
+     * Update the dislikes of a component once the fetch completes.
+     * The component shows the text it was created with until then,
+     * and the updated text is used if the component reads the reference again.
+     */
+    private static void deferDislikeUpdate(VoteFetch fetch, AtomicReference<Object> textRef, boolean isSegmentedButton) {
+        synchronized (videoIdLockObject) {
+            if (!fetch.isDone()) {
+                fetch.pendingTextRefs.put(textRef, isSegmentedButton);
+                return;
+            }
+        }
+        // Completed since the wait timed out.
+        try {
+            RYDVoteData votingData = fetch.get();
+            if (votingData != null) updateDislike(textRef, isSegmentedButton, votingData);
+        } catch (Exception ex) {
+            LogHelper.printException(ReturnYouTubeDislike.class, "Failed to update dislikes after fetch", ex);
+        }
+    }
+
     public static void sendVote(Vote vote) {
         if (!isEnabled) return;
         try {
             Objects.requireNonNull(vote);
 
-            Context context = Objects.requireNonNull(ReVancedUtils.getContext());
-            if (SharedPrefHelper.getBoolean(context, SharedPrefHelper.SharedPrefNames.YOUTUBE, "user_signed_out", true)) {
-                return;
-            }
+            if (!isUserSignedIn()) return;
 
-            // Must make a local copy of videoId, since it may change between now and when the vote thread runs
+            // Must make a local copy of videoId, since it may change between now and when the vote is sent
             String videoIdToVoteFor = getCurrentVideoId();
             if (videoIdToVoteFor == null) return;
 
-            voteSerialExecutor.execute(() -> {
-                // must wrap in try/catch to properly log exceptions
-                try {
-                    String userId = getUserId();
-                    if (userId != null) {
-                        ReturnYouTubeDislikeApi.sendVote(videoIdToVoteFor, userId, vote);
-                    }
-                } catch (Exception ex) {
-                    LogHelper.printException(ReturnYouTubeDislike.class, "Failed to send vote", ex);
-                }
-            });
+            RYDVoteQueue.add(videoIdToVoteFor, vote);
         } catch (Exception ex) {
             LogHelper.printException(ReturnYouTubeDislike.class, "Error while trying to send vote", ex);
         }
     }
 
-    /**
-     * Must call off main thread, as this will make a network call if user is not yet registered
-     *
-     * @return ReturnYouTubeDislike user ID. If user registration has never happened
-     * and the network call fails, this returns NULL
-     */
-    @Nullable
-    private static String getUserId() {
-        ReVancedUtils.verifyOffMainThread();
-
-        String userId = SettingsEnum.RYD_USER_ID.getString();
-        if (userId != null) {
-            return userId;
-        }
-
-        userId = ReturnYouTubeDislikeApi.registerAsNewUser(); // blocks until network call is completed
-        if (userId != null) {
-            SettingsEnum.RYD_USER_ID.saveValue(userId);
-        }
-        return userId;
+    private static boolean isUserSignedIn() {
+        Context context = Objects.requireNonNull(ReVancedUtils.getContext());
+        return !SharedPrefHelper.getBoolean(context, SharedPrefHelper.SharedPrefNames.YOUTUBE, "user_signed_out", true);
     }
 
     /**
@@ -309,14 +365,9 @@ public class ReturnYouTubeDislike {
                 final int separatorColor = ThemeHelper.getDayNightTheme()
                         ? 0x29AAAAAA  // transparent dark gray
                         : 0xFFD9D9D9; // light gray
-                addSpanStyling(middleSeparatorSpan, new ForegroundColorSpan(separatorColor));
-                CharacterStyle noAntiAliasingStyle = new CharacterStyle() {
-                    @Override
-                    public void updateDrawState(TextPaint tp) {
-                        tp.setAntiAlias(false); // draw without anti-aliasing, to give a sharper edge
-                    }
-                };
-                addSpanStyling(middleSeparatorSpan, noAntiAliasingStyle);
+                SegmentedStyles styles = getSegmentedStyles(separatorColor);
+                addSpanStyling(middleSeparatorSpan, styles.middleSeparatorColor);
+                addSpanStyling(middleSeparatorSpan, styles.noAntiAliasing);
 
                 Spannable dislikeSpan = newSpannableWithDislikes(oldSpannable, voteData);
 
@@ -325,35 +376,21 @@ public class ReturnYouTubeDislike {
                 if (!useCompactLayout) {
                     String leftSegmentedSeparatorString = ReVancedUtils.isRightToLeftTextLayout() ? "\u200F|  " : "|  ";
                     Spannable leftSeparatorSpan = newSpanUsingStylingOfAnotherSpan(oldSpannable, leftSegmentedSeparatorString);
-                    addSpanStyling(leftSeparatorSpan, new ForegroundColorSpan(separatorColor));
-                    addSpanStyling(leftSeparatorSpan, noAntiAliasingStyle);
+                    addSpanStyling(leftSeparatorSpan, styles.leftSeparatorColor);
+                    addSpanStyling(leftSeparatorSpan, styles.noAntiAliasing);
 
                     // Use a left separator with a larger font and visually match the stock right separator.
                     // But with a larger font, the entire span (including the like/dislike text) becomes shifted downward.
                     // To correct this, use additional spans to move the alignment back upward by a relative amount.
-                    setSegmentedAdjustmentValues();
-                    class RelativeVerticalOffsetSpan extends CharacterStyle {
-                        final float relativeVerticalShiftRatio;
-
-                        RelativeVerticalOffsetSpan(float relativeVerticalShiftRatio) {
-                            this.relativeVerticalShiftRatio = relativeVerticalShiftRatio;
-                        }
-
-                        @Override
-                        public void updateDrawState(TextPaint tp) {
-                            tp.baselineShift -= (int) (relativeVerticalShiftRatio * tp.getFontMetrics().top);
-                        }
-                    }
-                    // each section needs it's own Relative span, otherwise alignment is wrong
-                    addSpanStyling(leftSeparatorSpan, new RelativeVerticalOffsetSpan(segmentedLeftSeparatorVerticalShiftRatio));
+                    addSpanStyling(leftSeparatorSpan, styles.leftSeparatorOffset);
 
-                    addSpanStyling(likesSpan, new RelativeVerticalOffsetSpan(segmentedVerticalShiftRatio));
-                    addSpanStyling(middleSeparatorSpan, new RelativeVerticalOffsetSpan(segmentedVerticalShiftRatio));
-                    addSpanStyling(dislikeSpan, new RelativeVerticalOffsetSpan(segmentedVerticalShiftRatio));
+                    addSpanStyling(likesSpan, styles.likesOffset);
+                    addSpanStyling(middleSeparatorSpan, styles.middleSeparatorOffset);
+                    addSpanStyling(dislikeSpan, styles.dislikeOffset);
 
                     // important: must add size scaling after vertical offset (otherwise alignment gets off)
-                    addSpanStyling(leftSeparatorSpan, new RelativeSizeSpan(segmentedLeftSeparatorFontRatio));
-                    addSpanStyling(leftSeparatorSpan, new ScaleXSpan(segmentedLeftSeparatorHorizontalScaleRatio));
+                    addSpanStyling(leftSeparatorSpan, styles.leftSeparatorSize);
+                    addSpanStyling(leftSeparatorSpan, styles.leftSeparatorScale);
                     // middle separator does not need resizing
 
                     builder.append(leftSeparatorSpan);
@@ -369,6 +406,71 @@ public class ReturnYouTubeDislike {
         textRef.set(replacementSpannable);
     }
 
+    private static final class RelativeVerticalOffsetSpan extends CharacterStyle {
+        final float relativeVerticalShiftRatio;
+
+        RelativeVerticalOffsetSpan(float relativeVerticalShiftRatio) {
+            this.relativeVerticalShiftRatio = relativeVerticalShiftRatio;
+        }
+
+        @Override
+        public void updateDrawState(TextPaint tp) {
+            tp.baselineShift -= (int) (relativeVerticalShiftRatio * tp.getFontMetrics().top);
+        }
+    }
+
+    /**
+     * Styling of the segmented like/dislike button, made once and reused by every update,
+     * as the button is created many times for each video.
+     * Spans only style and hold no text, so the same span can be added to many texts.
+     */
+    private static final class SegmentedStyles {
+        final int separatorColor;
+        final ForegroundColorSpan leftSeparatorColor;
+        final ForegroundColorSpan middleSeparatorColor;
+        final CharacterStyle noAntiAliasing = new CharacterStyle() {
+            @Override
+            public void updateDrawState(TextPaint tp) {
+                tp.setAntiAlias(false); // draw without anti-aliasing, to give a sharper edge
+            }
+        };
+        // each section needs it's own Relative span, otherwise alignment is wrong
+        final RelativeVerticalOffsetSpan leftSeparatorOffset;
+        final RelativeVerticalOffsetSpan likesOffset;
+        final RelativeVerticalOffsetSpan middleSeparatorOffset;
+        final RelativeVerticalOffsetSpan dislikeOffset;
+        final RelativeSizeSpan leftSeparatorSize;
+        final ScaleXSpan leftSeparatorScale;
+
+        SegmentedStyles(int separatorColor) {
+            setSegmentedAdjustmentValues();
+            this.separatorColor = separatorColor;
+            leftSeparatorColor = new ForegroundColorSpan(separatorColor);
+            middleSeparatorColor = new ForegroundColorSpan(separatorColor);
+            leftSeparatorOffset = new RelativeVerticalOffsetSpan(segmentedLeftSeparatorVerticalShiftRatio);
+            likesOffset = new RelativeVerticalOffsetSpan(segmentedVerticalShiftRatio);
+            middleSeparatorOffset = new RelativeVerticalOffsetSpan(segmentedVerticalShiftRatio);
+            dislikeOffset = new RelativeVerticalOffsetSpan(segmentedVerticalShiftRatio);
+            leftSeparatorSize = new RelativeSizeSpan(segmentedLeftSeparatorFontRatio);
+            leftSeparatorScale = new ScaleXSpan(segmentedLeftSeparatorHorizontalScaleRatio);
+        }
+    }
+
+    @Nullable
+    private static volatile SegmentedStyles segmentedStyles;
+
+    /**
+     * @return The styles for the separator color, made again only if the theme changed.
+     */
+    private static SegmentedStyles getSegmentedStyles(int separatorColor) {
+        SegmentedStyles styles = segmentedStyles;
+        if (styles == null || styles.separatorColor != separatorColor) {
+            styles = new SegmentedStyles(separatorColor);
+            segmentedStyles = styles;
+        }
+        return styles;
+    }
+
     private static Spanned updateShortsDislike(Spanned textRef, RYDVoteData voteData) {
         return newSpannedWithDislikes(textRef, voteData);
     }
@@ -468,38 +570,10 @@ public class ReturnYouTubeDislike {
     }
 
     static String formatDislikeCount(long dislikeCount) {
-        synchronized (ReturnYouTubeDislike.class) { // number formatter is not thread safe, must synchronize
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-                if (dislikeCountFormatter == null) {
-                    // Note: Java number formatters will use the locale specific number characters.
-                    // such as Arabic which formats "1.2" into "???"
-                    // But YouTube disregards locale specific number characters
-                    // and instead shows english number characters everywhere.
-                    Locale locale = ReVancedUtils.getContext().getResources().getConfiguration().locale;
-                    dislikeCountFormatter = CompactDecimalFormat.getInstance(locale, CompactDecimalFormat.CompactStyle.SHORT);
-                }
-                return dislikeCountFormatter.format(dislikeCount);
-            } else {
-                // Couldn't format dislikes, using the unformatted count dislikeCount
-                return String.valueOf(dislikeCount);
-            }
-        }
+        return DislikeFormatter.formatCount(dislikeCount);
     }
 
     static String formatDislikePercentage(float dislikePercentage) {
-        synchronized (ReturnYouTubeDislike.class) { // number formatter is not thread safe, must synchronize
-            if (dislikePercentageFormatter == null) {
-                Locale locale = ReVancedUtils.getContext().getResources().getConfiguration().locale;
-                dislikePercentageFormatter = NumberFormat.getPercentInstance(locale);
-            }
-            if (dislikePercentage >= 0.01) { // at least 1%
-                dislikePercentageFormatter.setMaximumFractionDigits(0); // show only whole percentage points
-            } else {
-                dislikePercentageFormatter.setMaximumFractionDigits(1); // show up to 1 digit precision
-            }
-            return dislikePercentageFormatter.format(dislikePercentage);
-        }
+        return DislikeFormatter.formatPercentage(dislikePercentage);
     }
-
-
 }
\ No newline at end of file
@@ -0,0 +1,159 @@
+package app.revanced.integrations.returnyoutubedislike.requests;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Solves the proof of work puzzle of RYD user registration:
+ * finds a 4 byte nonce, so the SHA-512 of the nonce and the challenge starts with enough zero bits.
+ * <p>
+ * Each thread checks every n-th nonce, with its own digest and buffers, so the search allocates nothing.
+ * All threads stop as soon as one finds a solution, or when the calling thread is interrupted.
+ */
+final class ProofOfWorkSolver {
+    private static final int CHALLENGE_LENGTH = 16;
+    private static final int NONCE_LENGTH = 4;
+    private static final int DIGEST_LENGTH = 64;
+
+    private ProofOfWorkSolver() {
+    }
+
+    static final class Result {
+        /**
+         * Little endian nonce, or null if no nonce solves the puzzle.
+         */
+        final byte[] nonce;
+        final long hashes;
+        final long elapsedNanos;
+
+        private Result(byte[] nonce, long hashes, long elapsedNanos) {
+            this.nonce = nonce;
+            this.hashes = hashes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        long getHashesPerSecond() {
+            return elapsedNanos == 0 ? 0 : hashes * 1_000_000_000L / elapsedNanos;
+        }
+    }
+
+    /**
+     * @return Threads to use, one per core.
+     */
+    static int getDefaultThreadCount() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Blocks until a thread finds a solution, or all nonces are checked.
+     *
+     * @param challenge 16 bytes of challenge.
+     * @throws InterruptedException If the calling thread is interrupted, after which all threads stop.
+     */
+    static Result solve(byte[] challenge, int difficulty, int threadCount) throws InterruptedException {
+        if (challenge.length < CHALLENGE_LENGTH) {
+            throw new IllegalArgumentException("Challenge is too short: " + challenge.length);
+        }
+        final long startNanos = System.nanoTime();
+        // Same limit as the RYD browser extension.
+        final long maxCount = Math.min((long) (Math.pow(2, difficulty + 1) * 5), 1L << 32);
+
+        final AtomicLong solution = new AtomicLong(-1);
+        final AtomicLong hashes = new AtomicLong();
+        final CountDownLatch finished = new CountDownLatch(threadCount);
+        final Thread[] workers = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final int firstNonce = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    hashes.addAndGet(search(challenge, difficulty, firstNonce, threadCount, maxCount, solution));
+                } finally {
+                    finished.countDown();
+                }
+            }, "ryd-puzzle-solver-" + t);
+            workers[t].setDaemon(true);
+            workers[t].start();
+        }
+
+        try {
+            finished.await();
+        } catch (InterruptedException ex) {
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+            throw ex;
+        }
+
+        final long nonce = solution.get();
+        byte[] nonceBytes = null;
+        if (nonce >= 0) {
+            nonceBytes = new byte[NONCE_LENGTH];
+            writeNonce(nonceBytes, nonce);
+        }
+        return new Result(nonceBytes, hashes.get(), System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Check the nonces from the first, stepping by the thread count, until a solution is found by any thread.
+     *
+     * @return The number of hashes computed.
+     */
+    private static long search(byte[] challenge, int difficulty, long firstNonce, int step, long maxCount,
+                               AtomicLong solution) {
+        final MessageDigest digest = newDigest();
+        final byte[] buffer = new byte[NONCE_LENGTH + CHALLENGE_LENGTH];
+        System.arraycopy(challenge, 0, buffer, NONCE_LENGTH, CHALLENGE_LENGTH);
+        final byte[] hash = new byte[DIGEST_LENGTH];
+        final Thread thread = Thread.currentThread();
+
+        long count = 0;
+        try {
+            for (long nonce = firstNonce; nonce < maxCount; nonce += step) {
+                if (solution.get() >= 0 || thread.isInterrupted()) break;
+
+                writeNonce(buffer, nonce);
+                digest.update(buffer, 0, buffer.length);
+                digest.digest(hash, 0, DIGEST_LENGTH);
+                count++;
+
+                if (countLeadingZeroes(hash) >= difficulty) {
+                    solution.compareAndSet(-1, nonce);
+                    break;
+                }
+            }
+        } catch (DigestException ex) {
+            throw new IllegalStateException(ex); // should never happen, the hash buffer is large enough
+        }
+        return count;
+    }
+
+    private static void writeNonce(byte[] buffer, long nonce) {
+        buffer[0] = (byte) nonce;
+        buffer[1] = (byte) (nonce >> 8);
+        buffer[2] = (byte) (nonce >> 16);
+        buffer[3] = (byte) (nonce >> 24);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-512");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex); // should never happen
+        }
+    }
+
+    static int countLeadingZeroes(byte[] hash) {
+        int zeroes = 0;
+        for (byte b : hash) {
+            final int value = b & 0xFF;
+            if (value != 0) {
+                return zeroes + Integer.numberOfLeadingZeros(value) - 24;
+            }
+            zeroes += 8;
+        }
+        return zeroes;
+    }
+}
@@ -0,0 +1,246 @@
+package app.revanced.integrations.returnyoutubedislike.requests;
+
+import static app.revanced.integrations.utils.StringRef.str;
+
+import android.content.Context;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import app.revanced.integrations.utils.LogHelper;
+import app.revanced.integrations.utils.ReVancedUtils;
+
+/**
+ * Recently fetched votes, so opening a video fetched before (or prefetched from the feed) needs no request.
+ * <p>
+ * The API updates votes with a delay anyway, so votes a few minutes old are as good as new.
+ * Older votes are still shown at once, but should be fetched again in the background.
+ * <p>
+ * Votes are kept in memory for the most recent videos, and in a single file in the cache directory,
+ * so they survive restarts. The file is read on the first lookup off the main thread,
+ * and written in the background a few seconds after votes change, so a burst of fetches writes it once.
+ */
+public final class RYDVoteCache {
+    private static final int MAX_MEMORY_ENTRIES = 200;
+    private static final int MAX_DISK_ENTRIES = 1000;
+    private static final long FRESH_MILLISECONDS = 10 * 60 * 1000;
+    private static final long MAX_AGE_MILLISECONDS = 7 * 24 * 60 * 60 * 1000L;
+
+    private static final String FILE_NAME = "ryd_votes";
+    private static final int FILE_VERSION = 1;
+    private static final long WRITE_DELAY_MILLISECONDS = 5000;
+
+    @GuardedBy("RYDVoteCache.class")
+    private static final LinkedHashMap<String, CachedVotes> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedVotes> eldest) {
+            return size() > MAX_MEMORY_ENTRIES;
+        }
+    };
+
+    /**
+     * Contents of the cache file, or null if not read yet.
+     */
+    @GuardedBy("RYDVoteCache.class")
+    @Nullable
+    private static LinkedHashMap<String, CachedVotes> diskEntries;
+    @GuardedBy("RYDVoteCache.class")
+    private static boolean writeScheduled;
+    /**
+     * Held while writing the cache file.
+     */
+    private static final Object writeLock = new Object();
+
+    @GuardedBy("RYDVoteCache.class")
+    private static long memoryHits;
+    @GuardedBy("RYDVoteCache.class")
+    private static long diskHits;
+    @GuardedBy("RYDVoteCache.class")
+    private static long misses;
+
+    private RYDVoteCache() {
+    }
+
+    public static final class CachedVotes {
+        final long fetchedMillis;
+        public final RYDVoteData votes;
+
+        CachedVotes(long fetchedMillis, RYDVoteData votes) {
+            this.fetchedMillis = fetchedMillis;
+            this.votes = votes;
+        }
+
+        /**
+         * @return If the votes should be fetched again.
+         */
+        public boolean isStale() {
+            return System.currentTimeMillis() - fetchedMillis >= FRESH_MILLISECONDS;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() - fetchedMillis >= MAX_AGE_MILLISECONDS;
+        }
+    }
+
+    /**
+     * Look up the votes of a video in memory. Can be called on any thread.
+     * Counted in the hit ratio if found.
+     *
+     * @return The votes of the video, or null if not in memory.
+     */
+    @Nullable
+    public static synchronized CachedVotes get(String videoId) {
+        CachedVotes entry = entries.get(videoId);
+        if (entry == null) return null;
+        if (entry.isExpired()) {
+            entries.remove(videoId);
+            return null;
+        }
+        memoryHits++;
+        return entry;
+    }
+
+    /**
+     * Look up the votes of a video missing from memory in the cache file, reading the file if not read yet.
+     * Must be called off the main thread, after {@link #get(String)}. Counted in the hit ratio.
+     *
+     * @return The votes of the video, or null if not cached.
+     */
+    @Nullable
+    public static synchronized CachedVotes getFromDisk(String videoId) {
+        ReVancedUtils.verifyOffMainThread();
+
+        CachedVotes entry = getDiskEntries().get(videoId);
+        if (entry == null || entry.isExpired()) {
+            misses++;
+            return null;
+        }
+        diskHits++;
+        entries.put(videoId, entry);
+        return entry;
+    }
+
+    /**
+     * @return If the votes of the video are cached and not stale. Not counted in the hit ratio.
+     */
+    public static synchronized boolean isFresh(String videoId) {
+        CachedVotes entry = entries.get(videoId);
+        if (entry == null && diskEntries != null) entry = diskEntries.get(videoId);
+        return entry != null && !entry.isStale();
+    }
+
+    static synchronized void put(String videoId, RYDVoteData votes) {
+        CachedVotes entry = new CachedVotes(System.currentTimeMillis(), votes);
+        entries.put(videoId, entry);
+        if (diskEntries != null) diskEntries.put(videoId, entry);
+        scheduleWrite();
+    }
+
+    /**
+     * @return Lookups found in memory, on disk, and not found, for the settings.
+     */
+    public static synchronized String getStatistics() {
+        final long lookups = memoryHits + diskHits + misses;
+        final long hitPercentage = lookups == 0 ? 0 : (memoryHits + diskHits) * 100 / lookups;
+        return str("revanced_ryd_vote_cache_summary", hitPercentage, lookups, memoryHits, diskHits, misses);
+    }
+
+    @GuardedBy("RYDVoteCache.class")
+    private static LinkedHashMap<String, CachedVotes> getDiskEntries() {
+        if (diskEntries != null) return diskEntries;
+
+        diskEntries = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedVotes> eldest) {
+                return size() > MAX_DISK_ENTRIES;
+            }
+        };
+        File file = getFile();
+        if (file != null && file.isFile()) {
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (input.readInt() != FILE_VERSION) throw new IOException("Unexpected cache file version");
+                final int count = input.readInt();
+                // Least recently used first.
+                for (int i = 0; i < count; i++) {
+                    final String videoId = input.readUTF();
+                    final long fetchedMillis = input.readLong();
+                    RYDVoteData votes = new RYDVoteData(videoId, input.readLong(), input.readLong(), input.readLong());
+                    CachedVotes entry = new CachedVotes(fetchedMillis, votes);
+                    if (!entry.isExpired()) diskEntries.put(videoId, entry);
+                }
+            } catch (IOException ex) {
+                LogHelper.printException(RYDVoteCache.class, "Failed to read cached votes", ex);
+                diskEntries.clear();
+            }
+        }
+        // Votes fetched before the file was read.
+        for (Map.Entry<String, CachedVotes> entry : entries.entrySet()) {
+            diskEntries.put(entry.getKey(), entry.getValue());
+        }
+        return diskEntries;
+    }
+
+    @GuardedBy("RYDVoteCache.class")
+    private static void scheduleWrite() {
+        if (writeScheduled) return;
+        writeScheduled = true;
+        ReVancedUtils.runOnMainThreadDelayed(() -> ReVancedUtils.runOnBackgroundThread(RYDVoteCache::write),
+                WRITE_DELAY_MILLISECONDS);
+    }
+
+    private static void write() {
+        List<CachedVotes> snapshot;
+        File file;
+        synchronized (RYDVoteCache.class) {
+            writeScheduled = false;
+            file = getFile();
+            if (file == null) return;
+            snapshot = new ArrayList<>(getDiskEntries().values());
+        }
+
+        synchronized (writeLock) {
+            writeFile(file, snapshot);
+        }
+    }
+
+    private static void writeFile(File file, List<CachedVotes> snapshot) {
+        File temporary = new File(file.getPath() + ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                output.writeInt(FILE_VERSION);
+                output.writeInt(snapshot.size());
+                for (CachedVotes entry : snapshot) {
+                    output.writeUTF(entry.votes.videoId);
+                    output.writeLong(entry.fetchedMillis);
+                    output.writeLong(entry.votes.viewCount);
+                    output.writeLong(entry.votes.likeCount);
+                    output.writeLong(entry.votes.dislikeCount);
+                }
+            }
+            if (!temporary.renameTo(file)) throw new IOException("Failed to rename: " + temporary);
+        } catch (IOException ex) {
+            LogHelper.printException(RYDVoteCache.class, "Failed to write cached votes", ex);
+            //noinspection ResultOfMethodCallIgnored
+            temporary.delete();
+        }
+    }
+
+    @Nullable
+    private static File getFile() {
+        Context context = ReVancedUtils.getContext();
+        return context == null ? null : new File(context.getCacheDir(), FILE_NAME);
+    }
+}
@@ -1,9 +1,9 @@
 package app.revanced.integrations.returnyoutubedislike.requests;
 
-import org.json.JSONException;
-import org.json.JSONObject;
+import android.util.JsonReader;
+import android.util.MalformedJsonException;
 
-import java.util.Objects;
+import java.io.IOException;
 
 /**
  * ReturnYouTubeDislike API estimated like/dislike/view counts.
@@ -45,17 +45,49 @@ public final class RYDVoteData {
     public final float dislikePercentage;
 
     /**
-     * @throws JSONException if JSON parse error occurs, or if the values make no sense (ie: negative values)
+     * Read the vote data from the API response, skipping the fields not used.
+     *
+     * @throws IOException if JSON parse error occurs, a field is missing,
+     *                     or if the values make no sense (ie: negative values)
      */
-    public RYDVoteData(JSONObject json) throws JSONException {
-        Objects.requireNonNull(json);
-        videoId = json.getString("id");
-        viewCount = json.getLong("viewCount");
-        likeCount = json.getLong("likes");
-        dislikeCount = json.getLong("dislikes");
-        if (likeCount < 0 || dislikeCount < 0 || viewCount < 0) {
-            throw new JSONException("Unexpected JSON values: " + json);
+    public static RYDVoteData parse(JsonReader reader) throws IOException {
+        String videoId = null;
+        long viewCount = -1, likeCount = -1, dislikeCount = -1;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    videoId = reader.nextString();
+                    break;
+                case "viewCount":
+                    viewCount = reader.nextLong();
+                    break;
+                case "likes":
+                    likeCount = reader.nextLong();
+                    break;
+                case "dislikes":
+                    dislikeCount = reader.nextLong();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (videoId == null || likeCount < 0 || dislikeCount < 0 || viewCount < 0) {
+            throw new MalformedJsonException("Unexpected JSON values for video: " + videoId + " views: " + viewCount
+                    + " likes: " + likeCount + " dislikes: " + dislikeCount);
         }
+        return new RYDVoteData(videoId, viewCount, likeCount, dislikeCount);
+    }
+
+    RYDVoteData(String videoId, long viewCount, long likeCount, long dislikeCount) {
+        this.videoId = videoId;
+        this.viewCount = viewCount;
+        this.likeCount = likeCount;
+        this.dislikeCount = dislikeCount;
         likePercentage = (likeCount == 0 ? 0 : (float)likeCount / (likeCount + dislikeCount));
         dislikePercentage = (dislikeCount == 0 ? 0 : (float)dislikeCount / (likeCount + dislikeCount));
     }
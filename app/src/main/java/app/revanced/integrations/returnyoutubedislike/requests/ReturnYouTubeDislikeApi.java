@@ -4,23 +4,22 @@ import static app.revanced.integrations.returnyoutubedislike.requests.ReturnYouT
 import static app.revanced.integrations.utils.StringRef.str;
 
 import android.util.Base64;
+import android.util.MalformedJsonException;
 import android.widget.Toast;
 
 import androidx.annotation.Nullable;
 
-import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.ProtocolException;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Objects;
 
 import app.revanced.integrations.requests.Requester;
+import app.revanced.integrations.requests.SingleFlight;
 import app.revanced.integrations.returnyoutubedislike.ReturnYouTubeDislike;
 import app.revanced.integrations.utils.LogHelper;
 import app.revanced.integrations.utils.ReVancedUtils;
@@ -67,6 +66,8 @@ public class ReturnYouTubeDislikeApi {
      */
     private static volatile long lastTimeRateLimitWasHit; // must be volatile, since different threads read/write to this
 
+    private static final SingleFlight<String, RYDVoteData> voteFetches = new SingleFlight<>();
+
     private ReturnYouTubeDislikeApi() {
     } // utility class
 
@@ -102,6 +103,7 @@ public class ReturnYouTubeDislikeApi {
 
     /**
      * @return NULL if fetch failed, or if a rate limit is in effect.
+     * Callers fetching the same video at the same time share one request.
      */
     @Nullable
     public static RYDVoteData fetchVotes(String videoId) {
@@ -111,7 +113,18 @@ public class ReturnYouTubeDislikeApi {
         if (checkIfRateLimitInEffect()) return null;
 
         try {
-            HttpURLConnection connection = getRYDConnectionFromRoute(ReturnYouTubeDislikeRoutes.GET_DISLIKES, videoId);
+            return voteFetches.execute(videoId, () -> fetchVotesUncoalesced(videoId));
+        } catch (Exception ex) {
+            LogHelper.printException(ReturnYouTubeDislikeApi.class, "Failed to fetch votes", ex);
+            return null;
+        }
+    }
+
+    @Nullable
+    private static RYDVoteData fetchVotesUncoalesced(String videoId) {
+        HttpURLConnection connection = null;
+        try {
+            connection = getRYDConnectionFromRoute(ReturnYouTubeDislikeRoutes.GET_DISLIKES, videoId);
             // request headers, as per https://returnyoutubedislike.com/docs/fetching
             // the documentation says to use 'Accept:text/html', but the RYD browser plugin uses 'Accept:application/json'
             connection.setRequestProperty("Accept", "application/json");
@@ -124,25 +137,27 @@ public class ReturnYouTubeDislikeApi {
 
             final int responseCode = connection.getResponseCode();
             if (checkIfRateLimitWasHit(responseCode)) {
-                connection.disconnect(); // rate limit hit, should disconnect
+                Requester.disconnect(connection); // rate limit hit, should disconnect
                 updateStatistics(false, true);
                 return null;
             }
 
             if (responseCode == SUCCESS_HTTP_STATUS_CODE) {
                 // do not disconnect, the same server connection will likely be used again soon
-                JSONObject json = Requester.parseJSONObject(connection);
                 try {
-                    return new RYDVoteData(json);
-                } catch (JSONException ex) {
-                    LogHelper.printException(ReturnYouTubeDislikeApi.class, "Failed to parse video: " + videoId + " json: " + json, ex);
+                    RYDVoteData votes = Requester.parseJsonStream(connection, RYDVoteData::parse);
+                    RYDVoteCache.put(videoId, votes);
+                    return votes;
+                } catch (MalformedJsonException ex) {
+                    LogHelper.printException(ReturnYouTubeDislikeApi.class, "Failed to parse video: " + videoId, ex);
                     // fall thru to update statistics
                 }
             } else {
-                connection.disconnect(); // something went wrong, might as well disconnect
+                Requester.disconnect(connection); // something went wrong, might as well disconnect
             }
         } catch (Exception ex) { // connection timed out, response timeout, or some other network error
             LogHelper.printException(ReturnYouTubeDislikeApi.class, "Failed to fetch votes", ex);
+            if (connection != null) Requester.disconnect(connection);
         }
 
         updateStatistics(true, false);
@@ -155,20 +170,21 @@ public class ReturnYouTubeDislikeApi {
     @Nullable
     public static String registerAsNewUser() {
         ReVancedUtils.verifyOffMainThread();
+        HttpURLConnection connection = null;
         try {
             if (checkIfRateLimitInEffect()) {
                 return null;
             }
             String userId = randomString();
 
-            HttpURLConnection connection = getRYDConnectionFromRoute(ReturnYouTubeDislikeRoutes.GET_REGISTRATION, userId);
+            connection = getRYDConnectionFromRoute(ReturnYouTubeDislikeRoutes.GET_REGISTRATION, userId);
             connection.setRequestProperty("Accept", "application/json");
             connection.setConnectTimeout(API_REGISTER_VOTE_TIMEOUT_MILLISECONDS);
             connection.setReadTimeout(API_REGISTER_VOTE_TIMEOUT_MILLISECONDS);
 
             final int responseCode = connection.getResponseCode();
             if (checkIfRateLimitWasHit(responseCode)) {
-                connection.disconnect(); // disconnect, as no more connections will be made for a little while
+                Requester.disconnect(connection); // disconnect, as no more connections will be made for a little while
                 return null;
             }
             if (responseCode == SUCCESS_HTTP_STATUS_CODE) {
@@ -179,9 +195,13 @@ public class ReturnYouTubeDislikeApi {
                 String solution = solvePuzzle(challenge, difficulty);
                 return confirmRegistration(userId, solution);
             }
-            connection.disconnect();
+            Requester.disconnect(connection);
+        } catch (InterruptedException ex) {
+            LogHelper.info(ReturnYouTubeDislikeApi.class, "Registration interrupted");
+            Thread.currentThread().interrupt(); // Restore interrupt status flag.
         } catch (Exception ex) {
             LogHelper.printException(ReturnYouTubeDislikeApi.class, "Failed to register user", ex);
+            if (connection != null) Requester.disconnect(connection);
         }
         return null;
     }
@@ -191,10 +211,11 @@ public class ReturnYouTubeDislikeApi {
         ReVancedUtils.verifyOffMainThread();
         Objects.requireNonNull(userId);
         Objects.requireNonNull(solution);
+        HttpURLConnection connection = null;
         try {
             if (checkIfRateLimitInEffect()) return null;
 
-            HttpURLConnection connection = getRYDConnectionFromRoute(ReturnYouTubeDislikeRoutes.CONFIRM_REGISTRATION, userId);
+            connection = getRYDConnectionFromRoute(ReturnYouTubeDislikeRoutes.CONFIRM_REGISTRATION, userId);
             applyCommonPostRequestSettings(connection);
 
             String jsonInputString = "{\"solution\": \"" + solution + "\"}";
@@ -204,33 +225,39 @@ public class ReturnYouTubeDislikeApi {
             }
             final int responseCode = connection.getResponseCode();
             if (checkIfRateLimitWasHit(responseCode)) {
-                connection.disconnect(); // disconnect, as no more connections will be made for a little while
+                Requester.disconnect(connection); // disconnect, as no more connections will be made for a little while
                 return null;
             }
             if (responseCode == SUCCESS_HTTP_STATUS_CODE) {
                 String result = Requester.parseJson(connection);
                 if (result.equalsIgnoreCase("true")) return userId;
             }
-            connection.disconnect(); // something went wrong, might as well disconnect
+            Requester.disconnect(connection); // something went wrong, might as well disconnect
         } catch (Exception ex) {
             LogHelper.printException(ReturnYouTubeDislikeApi.class, "Failed to confirm registration for user: " + userId
                     + "solution: " + solution, ex);
+            if (connection != null) Requester.disconnect(connection);
         }
         return null;
     }
 
-    public static void sendVote(String videoId, String userId, ReturnYouTubeDislike.Vote vote) {
+    /**
+     * @return If the vote needs no retry: it was counted, or was rejected in a way a retry would not change.
+     * False if it should be sent again later, such as after a network error or rate limit.
+     */
+    public static boolean sendVote(String videoId, String userId, ReturnYouTubeDislike.Vote vote) {
         ReVancedUtils.verifyOffMainThread();
         Objects.requireNonNull(videoId);
         Objects.requireNonNull(userId);
         Objects.requireNonNull(vote);
 
+        HttpURLConnection connection = null;
         try {
             if (checkIfRateLimitInEffect()) {
-                return;
+                return false;
             }
 
-            HttpURLConnection connection = getRYDConnectionFromRoute(ReturnYouTubeDislikeRoutes.SEND_VOTE);
+            connection = getRYDConnectionFromRoute(ReturnYouTubeDislikeRoutes.SEND_VOTE);
             applyCommonPostRequestSettings(connection);
 
             String voteJsonString = "{\"userId\": \"" + userId + "\", \"videoId\": \"" + videoId + "\", \"value\": \"" + vote.value + "\"}";
@@ -241,8 +268,8 @@ public class ReturnYouTubeDislikeApi {
 
             final int responseCode = connection.getResponseCode();
             if (checkIfRateLimitWasHit(responseCode)) {
-                connection.disconnect(); // disconnect, as no more connections will be made for a little while
-                return;
+                Requester.disconnect(connection); // disconnect, as no more connections will be made for a little while
+                return false;
             }
             if (responseCode == SUCCESS_HTTP_STATUS_CODE) {
                 JSONObject json = Requester.parseJSONObject(connection);
@@ -250,27 +277,38 @@ public class ReturnYouTubeDislikeApi {
                 int difficulty = json.getInt("difficulty");
 
                 String solution = solvePuzzle(challenge, difficulty);
-                confirmVote(videoId, userId, solution);
-                return;
+                return confirmVote(videoId, userId, solution);
             }
-            connection.disconnect(); // something went wrong, might as well disconnect
+            Requester.disconnect(connection); // something went wrong, might as well disconnect
+            LogHelper.printException(ReturnYouTubeDislikeApi.class, "Failed to send vote for video: " + videoId
+                    + " response code: " + responseCode);
+            return !isServerError(responseCode);
+        } catch (InterruptedException ex) {
+            LogHelper.info(ReturnYouTubeDislikeApi.class, "Vote interrupted for video: " + videoId);
+            Thread.currentThread().interrupt(); // Restore interrupt status flag.
         } catch (Exception ex) {
             LogHelper.printException(ReturnYouTubeDislikeApi.class, "Failed to send vote for video: " + videoId
                     + " user: " + userId + " vote: " + vote, ex);
+            if (connection != null) Requester.disconnect(connection);
         }
+        return false;
     }
 
-    private static void confirmVote(String videoId, String userId, String solution) {
+    /**
+     * @see #sendVote(String, String, ReturnYouTubeDislike.Vote)
+     */
+    private static boolean confirmVote(String videoId, String userId, String solution) {
         ReVancedUtils.verifyOffMainThread();
         Objects.requireNonNull(videoId);
         Objects.requireNonNull(userId);
         Objects.requireNonNull(solution);
 
+        HttpURLConnection connection = null;
         try {
             if (checkIfRateLimitInEffect()) {
-                return;
+                return false;
             }
-            HttpURLConnection connection = getRYDConnectionFromRoute(ReturnYouTubeDislikeRoutes.CONFIRM_VOTE);
+            connection = getRYDConnectionFromRoute(ReturnYouTubeDislikeRoutes.CONFIRM_VOTE);
             applyCommonPostRequestSettings(connection);
 
             String jsonInputString = "{\"userId\": \"" + userId + "\", \"videoId\": \"" + videoId + "\", \"solution\": \"" + solution + "\"}";
@@ -280,19 +318,30 @@ public class ReturnYouTubeDislikeApi {
             }
             final int responseCode = connection.getResponseCode();
             if (checkIfRateLimitWasHit(responseCode)) {
-                connection.disconnect(); // disconnect, as no more connections will be made for a little while
-                return;
+                Requester.disconnect(connection); // disconnect, as no more connections will be made for a little while
+                return false;
             }
 
             if (responseCode == SUCCESS_HTTP_STATUS_CODE) {
                 String result = Requester.parseJson(connection);
-                if (result.equalsIgnoreCase("true")) return;
+                if (result.equalsIgnoreCase("true")) return true;
+                // A wrong solution, solving again will not help.
+                LogHelper.printException(ReturnYouTubeDislikeApi.class, "Vote not confirmed for video: " + videoId
+                        + " result: " + result);
+                return true;
             }
-            connection.disconnect(); // something went wrong, might as well disconnect
+            Requester.disconnect(connection); // something went wrong, might as well disconnect
+            return !isServerError(responseCode);
         } catch (Exception ex) {
             LogHelper.printException(ReturnYouTubeDislikeApi.class, "Failed to confirm vote for video: " + videoId
                     + " user: " + userId + " solution: " + solution, ex);
+            if (connection != null) Requester.disconnect(connection);
         }
+        return false;
+    }
+
+    private static boolean isServerError(int responseCode) {
+        return responseCode >= 500;
     }
 
     private static void applyCommonPostRequestSettings(HttpURLConnection connection) throws ProtocolException {
@@ -308,30 +357,16 @@ public class ReturnYouTubeDislikeApi {
     }
 
 
-    private static String solvePuzzle(String challenge, int difficulty) {
+    private static String solvePuzzle(String challenge, int difficulty) throws InterruptedException {
         byte[] decodedChallenge = Base64.decode(challenge, Base64.NO_WRAP);
 
-        byte[] buffer = new byte[20];
-        System.arraycopy(decodedChallenge, 0, buffer, 4, 16);
-
-        MessageDigest md;
-        try {
-            md = MessageDigest.getInstance("SHA-512");
-        } catch (NoSuchAlgorithmException ex) {
-            throw new IllegalStateException(ex); // should never happen
-        }
-
-        final int maxCount = (int) (Math.pow(2, difficulty + 1) * 5);
-        for (int i = 0; i < maxCount; i++) {
-            buffer[0] = (byte) i;
-            buffer[1] = (byte) (i >> 8);
-            buffer[2] = (byte) (i >> 16);
-            buffer[3] = (byte) (i >> 24);
-            byte[] messageDigest = md.digest(buffer);
-
-            if (countLeadingZeroes(messageDigest) >= difficulty) {
-                return Base64.encodeToString(new byte[]{buffer[0], buffer[1], buffer[2], buffer[3]}, Base64.NO_WRAP);
-            }
+        ProofOfWorkSolver.Result result = ProofOfWorkSolver.solve(decodedChallenge, difficulty,
+                ProofOfWorkSolver.getDefaultThreadCount());
+        LogHelper.info(ReturnYouTubeDislikeApi.class, "Puzzle of difficulty: " + difficulty + " took: "
+                + result.elapsedNanos / 1_000_000 + "ms hashes: " + result.hashes
+                + " hashes per second: " + result.getHashesPerSecond());
+        if (result.nonce != null) {
+            return Base64.encodeToString(result.nonce, Base64.NO_WRAP);
         }
 
         // should never be reached
@@ -348,28 +383,4 @@ public class ReturnYouTubeDislikeApi {
             sb.append(AB.charAt(rnd.nextInt(AB.length())));
         return sb.toString();
     }
-
-    private static int countLeadingZeroes(byte[] uInt8View) {
-        int zeroes = 0;
-        int value = 0;
-        for (byte b : uInt8View) {
-            value = b & 0xFF;
-            if (value == 0) {
-                zeroes += 8;
-            } else {
-                int count = 1;
-                if (value >>> 4 == 0) {
-                    count += 4;
-                    value <<= 4;
-                }
-                if (value >>> 6 == 0) {
-                    count += 2;
-                    value <<= 2;
-                }
-                zeroes += count - (value >>> 7);
-                break;
-            }
-        }
-        return zeroes;
-    }
 }
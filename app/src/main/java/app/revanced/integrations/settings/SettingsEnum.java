@@ -3,6 +3,8 @@ package app.revanced.integrations.settings;
 import android.content.Context;
 import android.util.Log;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import app.revanced.integrations.patches.misc.client.AppClient.ClientType;
 import app.revanced.integrations.utils.LogHelper;
 import app.revanced.integrations.utils.ReVancedUtils;
@@ -16,7 +18,9 @@ public enum SettingsEnum {
     ADREMOVER_PAID_CONTENT("revanced_adremover_paid_content", true, ReturnType.BOOLEAN),
     ADREMOVER_SELF_SPONSOR("revanced_adremover_self_sponsor", true, ReturnType.BOOLEAN),
     ADREMOVER_USER_FILTER("revanced_adremover_user_filter", false, ReturnType.BOOLEAN),
-    ADREMOVER_CUSTOM_FILTER("revanced_adremover_custom_strings", "", ReturnType.STRING, true),
+    ADREMOVER_CUSTOM_FILTER("revanced_adremover_custom_strings", "", ReturnType.STRING),
+    ADREMOVER_FILTER_TRACE("revanced_adremover_filter_trace", false, ReturnType.BOOLEAN),
+    ADREMOVER_SEGMENT_INDEX("revanced_adremover_segment_index", false, ReturnType.BOOLEAN),
 
     // Swipe controls
     ENABLE_SWIPE_AUTO_BRIGHTNESS("revanced_enable_swipe_auto_brightness", false, ReturnType.BOOLEAN),
@@ -172,12 +176,14 @@ public enum SettingsEnum {
     SPOOF_STREAMING_DATA_STATS_FOR_NERDS("revanced_spoof_streaming_data_stats_for_nerds", true, ReturnType.BOOLEAN),
 
     IGNORE_CHECK_WATCH_HISTORY_DOMAIN_NAME("revanced_ignore_check_watch_history_domain_name", false, ReturnType.BOOLEAN),
+    PREFETCH_FEED_VIDEOS("revanced_prefetch_feed_videos", false, ReturnType.BOOLEAN),
 
     //RYD Settings
     RYD_USER_ID("ryd_userId", null, SharedPrefHelper.SharedPrefNames.RYD, ReturnType.STRING),
     RYD_ENABLED("ryd_enabled", true, SharedPrefHelper.SharedPrefNames.RYD, ReturnType.BOOLEAN),
     RYD_SHOW_DISLIKE_PERCENTAGE("ryd_show_dislike_percentage", false, SharedPrefHelper.SharedPrefNames.RYD, ReturnType.BOOLEAN),
     RYD_USE_COMPACT_LAYOUT("ryd_use_compact_layout", true, SharedPrefHelper.SharedPrefNames.RYD, ReturnType.BOOLEAN),
+    RYD_MAX_WAIT_MILLISECONDS("ryd_max_wait_milliseconds", 50, SharedPrefHelper.SharedPrefNames.RYD, ReturnType.INTEGER),
 
     //SponsorBlock Settings
     SB_ENABLED("sb-enabled", true, SharedPrefHelper.SharedPrefNames.SPONSOR_BLOCK, ReturnType.BOOLEAN),
@@ -195,6 +201,9 @@ public enum SettingsEnum {
     SB_SHOW_TIME_WITHOUT_SEGMENTS("sb-length-without-segments", true, SharedPrefHelper.SharedPrefNames.SPONSOR_BLOCK, ReturnType.BOOLEAN),
     SB_IS_VIP("sb-is-vip", false, SharedPrefHelper.SharedPrefNames.SPONSOR_BLOCK, ReturnType.BOOLEAN),
     SB_LAST_VIP_CHECK("sb-last-vip-check", 0L, SharedPrefHelper.SharedPrefNames.SPONSOR_BLOCK, ReturnType.LONG),
+    SB_CACHE_TTL_MINUTES("sb-cache-ttl-minutes", 60, SharedPrefHelper.SharedPrefNames.SPONSOR_BLOCK, ReturnType.INTEGER),
+    SB_CACHE_MAX_SIZE_KB("sb-cache-max-size-kb", 2048, SharedPrefHelper.SharedPrefNames.SPONSOR_BLOCK, ReturnType.INTEGER),
+    SB_HASH_PREFIX_LOOKUP("sb-hash-prefix-lookup", false, SharedPrefHelper.SharedPrefNames.SPONSOR_BLOCK, ReturnType.BOOLEAN),
     SB_API_URL("sb-api-host-url", "https://sponsor.ajay.app", SharedPrefHelper.SharedPrefNames.SPONSOR_BLOCK, ReturnType.STRING),
     SB_API_MIRROR_URL("sb-api-host-mirror-url", "https://sponsorblock.hankmccord.dev", SharedPrefHelper.SharedPrefNames.SPONSOR_BLOCK, ReturnType.STRING),
     SB_FIRSTRUN("sb-firstrun", false, SharedPrefHelper.SharedPrefNames.SPONSOR_BLOCK, ReturnType.BOOLEAN);
@@ -245,10 +254,20 @@ public enum SettingsEnum {
     }
 
 
+    /**
+     * Incremented each time any setting value is changed.
+     * Lets anything derived from setting values cheaply detect it is out of date.
+     */
+    private static final AtomicInteger changeCount = new AtomicInteger();
+
     static {
         load();
     }
 
+    public static int getChangeCount() {
+        return changeCount.get();
+    }
+
     private static void load() {
         Context context = ReVancedUtils.getContext();
         if (context == null) {
@@ -294,6 +313,7 @@ public enum SettingsEnum {
 
     public void setValue(Object newValue) {
         this.value = newValue;
+        changeCount.incrementAndGet();
     }
 
     public void saveValue(Object newValue) {
@@ -307,6 +327,7 @@ public enum SettingsEnum {
                 SharedPrefHelper.saveString(context, sharedPref, path, newValue + "");
             }
             this.value = newValue;
+            changeCount.incrementAndGet();
         } else {
             LogHelper.printException(SettingsEnum.class, "Context on SaveValue is null!");
         }
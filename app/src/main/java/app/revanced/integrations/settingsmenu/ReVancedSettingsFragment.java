@@ -19,7 +19,10 @@ import android.preference.PreferenceFragment;
 import android.preference.PreferenceScreen;
 import android.preference.SwitchPreference;
 import android.view.View;
+import android.widget.Toast;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 import java.util.Objects;
 
@@ -27,6 +30,7 @@ import app.revanced.integrations.BuildConfig;
 import app.revanced.integrations.patches.button.AutoRepeat;
 import app.revanced.integrations.patches.button.Copy;
 import app.revanced.integrations.patches.button.CopyWithTimeStamp;
+import app.revanced.integrations.patches.ads.LithoFilterTrace;
 import app.revanced.integrations.patches.button.Download;
 import app.revanced.integrations.patches.misc.client.DeviceHardwareSupport;
 import app.revanced.integrations.patches.video.VideoQualityPatch;
@@ -165,6 +169,8 @@ public class ReVancedSettingsFragment extends PreferenceFragment {
             setVideoQuality(false);
 
             setPatchesInfomation();
+            setLithoFilterTrace();
+            setPrefetchFeedVideos();
             setSpoofAppVersionInfo();
             setSpoofStreamDataIosH264Availability();
 
@@ -277,6 +283,53 @@ public class ReVancedSettingsFragment extends PreferenceFragment {
         integration.setSummary(BuildConfig.VERSION_NAME);
     }
 
+    private void setLithoFilterTrace() {
+        Activity activity = ReVancedSettingsFragment.this.getActivity();
+
+        SwitchPreference tracePreference = new SwitchPreference(activity);
+        tracePreference.setKey(SettingsEnum.ADREMOVER_FILTER_TRACE.getPath());
+        tracePreference.setDefaultValue(SettingsEnum.ADREMOVER_FILTER_TRACE.getDefaultValue());
+        tracePreference.setTitle(str("revanced_litho_filter_trace_title"));
+        tracePreference.setSummary(str("revanced_litho_filter_trace_summary"));
+        this.miscPreferenceScreen.addPreference(tracePreference);
+
+        SwitchPreference segmentIndexPreference = new SwitchPreference(activity);
+        segmentIndexPreference.setKey(SettingsEnum.ADREMOVER_SEGMENT_INDEX.getPath());
+        segmentIndexPreference.setDefaultValue(SettingsEnum.ADREMOVER_SEGMENT_INDEX.getDefaultValue());
+        segmentIndexPreference.setTitle(str("revanced_litho_filter_segment_index_title"));
+        segmentIndexPreference.setSummary(str("revanced_litho_filter_segment_index_summary"));
+        this.miscPreferenceScreen.addPreference(segmentIndexPreference);
+
+        Preference exportPreference = new Preference(activity);
+        exportPreference.setTitle(str("revanced_litho_filter_trace_export_title"));
+        exportPreference.setSummary(str("revanced_litho_filter_trace_export_summary"));
+        exportPreference.setOnPreferenceClickListener(pref -> {
+            File file = new File(activity.getExternalFilesDir(null), "litho_filter_trace.tsv");
+            ReVancedUtils.runOnBackgroundThread(() -> {
+                String message;
+                try {
+                    message = str("revanced_litho_filter_trace_export_succeeded", LithoFilterTrace.export(file), file.getPath());
+                } catch (IOException ex) {
+                    LogHelper.printException(ReVancedSettingsFragment.class, "Failed to export Litho filter trace", ex);
+                    message = str("revanced_litho_filter_trace_export_failed", ex.getMessage());
+                }
+                final String toast = message;
+                ReVancedUtils.runOnMainThread(() -> Toast.makeText(activity, toast, Toast.LENGTH_LONG).show());
+            });
+            return false;
+        });
+        this.miscPreferenceScreen.addPreference(exportPreference);
+    }
+
+    private void setPrefetchFeedVideos() {
+        SwitchPreference preference = new SwitchPreference(ReVancedSettingsFragment.this.getActivity());
+        preference.setKey(SettingsEnum.PREFETCH_FEED_VIDEOS.getPath());
+        preference.setDefaultValue(SettingsEnum.PREFETCH_FEED_VIDEOS.getDefaultValue());
+        preference.setTitle(str("revanced_prefetch_feed_videos_title"));
+        preference.setSummary(str("revanced_prefetch_feed_videos_summary"));
+        this.miscPreferenceScreen.addPreference(preference);
+    }
+
     private void setDownloaderPreferenceDialog(int index) {
         SettingsEnum downloaderPackageName = SettingsEnum.DOWNLOADER_PACKAGE_NAME;
 
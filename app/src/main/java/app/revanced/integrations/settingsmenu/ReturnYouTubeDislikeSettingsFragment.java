@@ -7,13 +7,17 @@ import android.app.AlertDialog;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
+import android.preference.EditTextPreference;
 import android.preference.Preference;
 import android.preference.PreferenceCategory;
 import android.preference.PreferenceFragment;
 import android.preference.PreferenceScreen;
 import android.preference.SwitchPreference;
+import android.text.InputType;
+import android.widget.Toast;
 
 import app.revanced.integrations.returnyoutubedislike.ReturnYouTubeDislike;
+import app.revanced.integrations.returnyoutubedislike.requests.RYDVoteCache;
 import app.revanced.integrations.settings.SettingsEnum;
 import app.revanced.integrations.utils.SharedPrefHelper;
 
@@ -34,6 +38,11 @@ public class ReturnYouTubeDislikeSettingsFragment extends PreferenceFragment {
      */
     private SwitchPreference compactLayoutPreference;
 
+    /**
+     * Time to wait for the votes before showing the video without dislikes
+     */
+    private EditTextPreference maxWaitPreference;
+
     private void updateUIState() {
         final boolean rydIsEnabled = SettingsEnum.RYD_ENABLED.getBoolean();
 
@@ -50,6 +59,8 @@ public class ReturnYouTubeDislikeSettingsFragment extends PreferenceFragment {
                 ? str("revanced_ryd_compact_layout_summary_on")
                 : str("revanced_ryd_compact_layout_summary_off"));
         compactLayoutPreference.setEnabled(rydIsEnabled);
+
+        maxWaitPreference.setEnabled(rydIsEnabled);
     }
 
     @Override
@@ -96,6 +107,35 @@ public class ReturnYouTubeDislikeSettingsFragment extends PreferenceFragment {
         });
         preferenceScreen.addPreference(compactLayoutPreference);
 
+        maxWaitPreference = new EditTextPreference(context);
+        maxWaitPreference.getEditText().setInputType(InputType.TYPE_CLASS_NUMBER);
+        maxWaitPreference.setTitle(str("revanced_ryd_max_wait_title"));
+        maxWaitPreference.setSummary(str("revanced_ryd_max_wait_summary"));
+        maxWaitPreference.setText(String.valueOf(SettingsEnum.RYD_MAX_WAIT_MILLISECONDS.getInt()));
+        maxWaitPreference.setOnPreferenceChangeListener((pref, newValue) -> {
+            final long maxWait;
+            try {
+                maxWait = Long.parseLong(newValue.toString().trim());
+            } catch (NumberFormatException ex) {
+                Toast.makeText(pref.getContext(), str("revanced_ryd_max_wait_invalid"), Toast.LENGTH_SHORT).show();
+                return false;
+            }
+            final int clampedMaxWait = (int) Math.max(0, Math.min(maxWait,
+                    ReturnYouTubeDislike.MAX_MILLISECONDS_TO_BLOCK_UI_WHILE_WAITING_FOR_FETCH_VOTES_TO_COMPLETE));
+            SettingsEnum.RYD_MAX_WAIT_MILLISECONDS.saveValue(clampedMaxWait);
+
+            // Show the value that is used, not the one typed.
+            maxWaitPreference.setText(String.valueOf(clampedMaxWait));
+            return false;
+        });
+        preferenceScreen.addPreference(maxWaitPreference);
+
+        Preference cacheStatisticsPreference = new Preference(context);
+        cacheStatisticsPreference.setTitle(str("revanced_ryd_vote_cache_title"));
+        cacheStatisticsPreference.setSummary(RYDVoteCache.getStatistics());
+        cacheStatisticsPreference.setSelectable(false);
+        preferenceScreen.addPreference(cacheStatisticsPreference);
+
         updateUIState();
 
 
@@ -330,6 +330,47 @@ public class SponsorBlockSettingsFragment extends PreferenceFragment implements
             preferencesToDisableWhenSBDisabled.add(preference);
         }
 
+        {
+            EditTextPreference preference = new EditTextPreference(context);
+            preference.getEditText().setInputType(InputType.TYPE_CLASS_NUMBER);
+            preference.setTitle(str("general_cache_ttl"));
+            preference.setSummary(str("general_cache_ttl_sum"));
+            preference.setText(String.valueOf(SettingsEnum.SB_CACHE_TTL_MINUTES.getInt()));
+            preference.setOnPreferenceChangeListener((pref, newValue) -> {
+                SettingsEnum.SB_CACHE_TTL_MINUTES.saveValue(Integer.valueOf(newValue.toString()));
+                return true;
+            });
+            screen.addPreference(preference);
+            preferencesToDisableWhenSBDisabled.add(preference);
+        }
+
+        {
+            EditTextPreference preference = new EditTextPreference(context);
+            preference.getEditText().setInputType(InputType.TYPE_CLASS_NUMBER);
+            preference.setTitle(str("general_cache_max_size"));
+            preference.setSummary(str("general_cache_max_size_sum"));
+            preference.setText(String.valueOf(SettingsEnum.SB_CACHE_MAX_SIZE_KB.getInt()));
+            preference.setOnPreferenceChangeListener((pref, newValue) -> {
+                SettingsEnum.SB_CACHE_MAX_SIZE_KB.saveValue(Integer.valueOf(newValue.toString()));
+                return true;
+            });
+            screen.addPreference(preference);
+            preferencesToDisableWhenSBDisabled.add(preference);
+        }
+
+        {
+            SwitchPreference preference = new SwitchPreference(context);
+            preference.setTitle(str("general_hash_prefix_lookup"));
+            preference.setSummary(str("general_hash_prefix_lookup_sum"));
+            preference.setChecked(SettingsEnum.SB_HASH_PREFIX_LOOKUP.getBoolean());
+            preference.setOnPreferenceChangeListener((pref, newValue) -> {
+                SettingsEnum.SB_HASH_PREFIX_LOOKUP.saveValue(newValue);
+                return true;
+            });
+            preferencesToDisableWhenSBDisabled.add(preference);
+            screen.addPreference(preference);
+        }
+
         {
             EditTextPreference preference = new EditTextPreference(context);
             preference.setTitle(str("general_uuid"));
@@ -10,10 +10,7 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import java.lang.ref.WeakReference;
-import java.lang.reflect.Field;
 import java.util.Arrays;
-import java.util.Timer;
-import java.util.TimerTask;
 
 import app.revanced.integrations.patches.video.VideoInformation;
 import app.revanced.integrations.settings.SettingsEnum;
@@ -21,14 +18,23 @@ import app.revanced.integrations.sponsorblock.objects.SponsorSegment;
 import app.revanced.integrations.sponsorblock.requests.SBRequester;
 import app.revanced.integrations.utils.LogHelper;
 import app.revanced.integrations.utils.ReVancedUtils;
+import app.revanced.integrations.utils.ReflectionCache;
 
 public class PlayerController {
 
-    private static final Timer sponsorTimer = new Timer("sponsor-skip-timer");
     public static WeakReference<Activity> playerActivity = new WeakReference<>(null);
     public static SponsorSegment[] sponsorSegmentsOfCurrentVideo;
+    /**
+     * Index of {@link #sponsorSegmentsOfCurrentVideo}.
+     */
+    private static volatile SegmentIndex segmentIndex = new SegmentIndex(null);
     private static long allowNextSkipRequestTime = 0L;
     public static String currentVideoId;
+    /**
+     * Held while changing {@link #currentVideoId},
+     * so segments downloaded for a previous video are never set as the segments of the current video.
+     */
+    private static final Object currentVideoIdLock = new Object();
     public static long lastKnownVideoTime = -1L;
     public static long lastKnownVideoLength = 1L;
     private static final Runnable findAndSkipSegmentRunnable = () -> {
@@ -37,7 +43,30 @@ public class PlayerController {
     private static float sponsorBarLeft = 1f;
     private static float sponsorBarRight = 1f;
     private static float sponsorBarThickness = 2f;
-    private static TimerTask skipSponsorTask = null;
+    /**
+     * Seekbar field with the bounds of the bar, read on every draw.
+     */
+    private static final ReflectionCache.FieldAccessor sponsorBarRectField =
+            new ReflectionCache.FieldAccessor("replaceMeWithsetSponsorBarRect");
+    /**
+     * Skips the segment the next skip is scheduled for, see {@link SkipScheduler}.
+     */
+    private static volatile SponsorSegment scheduledSkipSegment;
+    private static final Runnable skipScheduledSegmentRunnable = () -> {
+        SponsorSegment segment = scheduledSkipSegment;
+        if (segment == null) return;
+        lastKnownVideoTime = segment.start + 1;
+        VideoInformation.lastKnownVideoTime = lastKnownVideoTime;
+        ReVancedUtils.runOnMainThread(findAndSkipSegmentRunnable);
+    };
+    /**
+     * Largest video time step between high precision updates, that is not a seek.
+     */
+    private static final long MAX_HIGH_PRECISION_UPDATE_STEP_MILLIS = 1000;
+    /**
+     * Video time of the last high precision update, to notice pauses and seeks.
+     */
+    private static long lastHighPrecisionVideoTime = -1;
 
     public static String getCurrentVideoId() {
         return currentVideoId;
@@ -45,8 +74,11 @@ public class PlayerController {
 
     public static void setCurrentVideoId(final String videoId) {
         if (videoId == null || !SettingsEnum.SB_ENABLED.getBoolean()) {
-            currentVideoId = null;
-            sponsorSegmentsOfCurrentVideo = null;
+            synchronized (currentVideoIdLock) {
+                currentVideoId = null;
+                sponsorSegmentsOfCurrentVideo = null;
+            }
+            SkipScheduler.cancel();
             return;
         }
 
@@ -54,15 +86,36 @@ public class PlayerController {
 
         SponsorBlockSettings.update(ReVancedUtils.getContext());
 
-        currentVideoId = videoId;
-        sponsorSegmentsOfCurrentVideo = null;
+        synchronized (currentVideoIdLock) {
+            currentVideoId = videoId;
+            sponsorSegmentsOfCurrentVideo = null;
+        }
+        SkipScheduler.cancel();
 
-        sponsorTimer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                executeDownloadSegments(currentVideoId);
-            }
-        }, 0);
+        ReVancedUtils.runOnBackgroundThread(() -> executeDownloadSegments(videoId));
+    }
+
+    /**
+     * Set the segments of the current video, and build their index now instead of on the next video time update.
+     *
+     * @param segments Segments sorted by start.
+     */
+    public static void setSponsorSegmentsOfCurrentVideo(SponsorSegment[] segments) {
+        sponsorSegmentsOfCurrentVideo = segments;
+        segmentIndex = new SegmentIndex(segments);
+    }
+
+    /**
+     * @return The index of {@link #sponsorSegmentsOfCurrentVideo}, built again if the segments were replaced.
+     */
+    private static SegmentIndex getSegmentIndex() {
+        final SponsorSegment[] segments = sponsorSegmentsOfCurrentVideo;
+        SegmentIndex index = segmentIndex;
+        if (index.source != segments) {
+            index = new SegmentIndex(segments);
+            segmentIndex = index;
+        }
+        return index;
     }
 
     /**
@@ -81,7 +134,14 @@ public class PlayerController {
         SponsorSegment[] segments = SBRequester.getSegments(videoId);
         Arrays.sort(segments);
 
-        sponsorSegmentsOfCurrentVideo = segments;
+        synchronized (currentVideoIdLock) {
+            // Downloads run concurrently, and a download for a previous video can finish last.
+            if (!videoId.equals(currentVideoId)) {
+                LogHelper.info(PlayerController.class, "Ignoring segments of previous video: " + videoId);
+                return;
+            }
+            setSponsorSegmentsOfCurrentVideo(segments);
+        }
     }
 
     /**
@@ -98,49 +158,49 @@ public class PlayerController {
             return;
         }
 
-        SponsorSegment[] segments = sponsorSegmentsOfCurrentVideo;
-        if (segments == null || segments.length == 0) return;
-
-        final long START_TIMER_BEFORE_SEGMENT_MILLIS = 1200;
-        final long startTimerAtMillis = millis + START_TIMER_BEFORE_SEGMENT_MILLIS;
-
-        for (final SponsorSegment segment : segments) {
-            if (segment.start > millis) {
-                if (segment.start > startTimerAtMillis) break; // it's more then START_TIMER_BEFORE_SEGMENT_MILLIS far away
-                if (!segment.category.getBehaviour().getSkip()) break;
-
-                if (skipSponsorTask == null) {
-                    skipSponsorTask = new TimerTask() {
-                        @Override
-                        public void run() {
-                            skipSponsorTask = null;
-                            lastKnownVideoTime = segment.start + 1;
-                            VideoInformation.lastKnownVideoTime = lastKnownVideoTime;
-                            ReVancedUtils.runOnMainThread(findAndSkipSegmentRunnable);
-                        }
-                    };
-                    sponsorTimer.schedule(skipSponsorTask, segment.start - millis);
-                }
-
-                break;
-            }
+        SegmentIndex index = getSegmentIndex();
+        if (index.isEmpty()) return;
 
-            if (segment.end < millis) continue;
+        SponsorSegment segment = index.findContaining(millis);
+        if (segment == null) {
+            scheduleNextSkip(index, millis);
+            SkipSegmentView.hide();
+            return;
+        }
 
-            // we are in the segment!
-            final var behaviour = segment.category.getBehaviour();
-            if (behaviour.getSkip() && !(behaviour.getKey().equals("skip-once") && segment.hasAutoSkipped)) {
-                sendViewRequestAsync(millis, segment);
-                skipSegment(segment, false);
-                break;
-            } else {
-                SkipSegmentView.show();
-                return;
-            }
+        // we are in the segment!
+        SkipScheduler.cancel();
+        final var behaviour = segment.category.getBehaviour();
+        if (behaviour.getSkip() && !(behaviour.getKey().equals("skip-once") && segment.hasAutoSkipped)) {
+            sendViewRequestAsync(millis, segment);
+            skipSegment(segment, false);
+        } else {
+            SkipSegmentView.show();
+            return;
         }
         SkipSegmentView.hide();
     }
 
+    /**
+     * Schedule the skip of the next segment, if it starts soon, otherwise cancel any pending skip.
+     * Scheduled again on every update, which corrects for seeks and speed changes.
+     *
+     * @param millis Video time outside of any segment.
+     */
+    private static void scheduleNextSkip(SegmentIndex index, long millis) {
+        final long START_TIMER_BEFORE_SEGMENT_MILLIS = 1200;
+
+        SponsorSegment next = index.findNextAfter(millis);
+        // Only scheduled if less than START_TIMER_BEFORE_SEGMENT_MILLIS far away.
+        if (next != null && next.start <= millis + START_TIMER_BEFORE_SEGMENT_MILLIS && next.category.getBehaviour().getSkip()) {
+            scheduledSkipSegment = next;
+            SkipScheduler.schedule(next, millis, System.nanoTime(), skipScheduledSegmentRunnable);
+        } else {
+            // Playback moved away from the segment of a pending skip.
+            SkipScheduler.cancel();
+        }
+    }
+
     private static void sendViewRequestAsync(final long millis, final SponsorSegment segment) {
         if (segment.category != SponsorBlockSettings.SegmentInfo.UNSUBMITTED) {
             long newSkippedTime = SettingsEnum.SB_SKIPPED_SEGMENTS_TIME.getLong() + (segment.end - segment.start);
@@ -160,6 +220,18 @@ public class PlayerController {
      * Called very high frequency (once every about 100ms), also in background. It sometimes triggers when a video is paused (couple times in the row with the same value)
      */
     public static void setCurrentVideoTimeHighPrecision(final long millis) {
+        // A jump back or far ahead is a seek, which cancels the pending skip until playback continues.
+        // The same time again happens during normal playback, and keeps the pending skip.
+        final long previousMillis = lastHighPrecisionVideoTime;
+        lastHighPrecisionVideoTime = millis;
+        if (millis < previousMillis || millis - previousMillis > MAX_HIGH_PRECISION_UPDATE_STEP_MILLIS) {
+            SkipScheduler.cancel();
+        } else if (millis > previousMillis && SettingsEnum.SB_ENABLED.getBoolean()) {
+            // Playing, schedule now instead of waiting for the next video time update.
+            SegmentIndex index = getSegmentIndex();
+            if (!index.isEmpty() && index.findContaining(millis) == null) scheduleNextSkip(index, millis);
+        }
+
         if ((millis < lastKnownVideoTime && lastKnownVideoTime >= lastKnownVideoLength) || millis == 0) {
             SponsorBlockUtils.showShieldButton(); // skipping from end to the video will show the buttons again
             SponsorBlockUtils.showVoteButton();
@@ -183,9 +255,7 @@ public class PlayerController {
 
     public static void setSponsorBarRect(final Object self) {
         try {
-            Field field = self.getClass().getDeclaredField("replaceMeWithsetSponsorBarRect");
-            field.setAccessible(true);
-            Rect rect = (Rect) field.get(self);
+            Rect rect = (Rect) sponsorBarRectField.get(self);
             if (rect != null) {
                 setSponsorBarAbsoluteLeft(rect);
                 setSponsorBarAbsoluteRight(rect);
@@ -224,18 +294,8 @@ public class PlayerController {
         if (sponsorBarThickness < 0.1) return;
         if (sponsorSegmentsOfCurrentVideo == null) return;
 
-        final float thicknessDiv2 = sponsorBarThickness / 2;
-        final float top = posY - thicknessDiv2;
-        final float bottom = posY + thicknessDiv2;
-        final float absoluteLeft = sponsorBarLeft;
-        final float absoluteRight = sponsorBarRight;
-
-        final float tmp1 = 1f / (float) lastKnownVideoLength * (absoluteRight - absoluteLeft);
-        for (SponsorSegment segment : sponsorSegmentsOfCurrentVideo) {
-            float left = segment.start * tmp1 + absoluteLeft;
-            float right = segment.end * tmp1 + absoluteLeft;
-            canvas.drawRect(left, top, right, bottom, segment.category.getPaint());
-        }
+        SponsorBarRenderer.draw(canvas, sponsorSegmentsOfCurrentVideo, lastKnownVideoLength,
+                sponsorBarLeft, sponsorBarRight, sponsorBarThickness, posY);
     }
 
     public static void skipRelativeMilliseconds(int millisRelative) {
@@ -269,11 +329,8 @@ public class PlayerController {
 
         final long millis = lastKnownVideoTime;
 
-        for (SponsorSegment segment : sponsorSegmentsOfCurrentVideo) {
-            if (segment.start > millis) break;
-
-            if (segment.end < millis) continue;
-
+        SponsorSegment segment = getSegmentIndex().findContaining(millis);
+        if (segment != null) {
             SkipSegmentView.show();
 
             final var behaviour = segment.category.getBehaviour();
@@ -282,7 +339,6 @@ public class PlayerController {
 
             sendViewRequestAsync(millis, segment);
             skipSegment(segment, wasClicked);
-            break;
         }
 
         SkipSegmentView.hide();
@@ -303,7 +359,7 @@ public class PlayerController {
                 if (sponsorSegment != segment)
                     newSegments[i++] = sponsorSegment;
             }
-            sponsorSegmentsOfCurrentVideo = newSegments;
+            setSponsorSegmentsOfCurrentVideo(newSegments);
         }
     }
 }
@@ -0,0 +1,157 @@
+package app.revanced.integrations.sponsorblock;
+
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+import app.revanced.integrations.sponsorblock.objects.SponsorSegment;
+
+/**
+ * Immutable index of the segments of a video, for finding the segment at a video time.
+ * <p>
+ * Segments are sorted by start, and may overlap. For each segment the largest end of it and all segments before it
+ * is kept, which increases with the index, so the first segment containing a time can be binary searched as well.
+ * <p>
+ * During normal playback the time only increases a little between lookups,
+ * so the previous result is kept as a cursor and moved forward, which is constant time.
+ * After a seek the cursor is found again with a binary search. Lookups never allocate.
+ */
+final class SegmentIndex {
+    /**
+     * Cursor steps tried before a binary search is used instead.
+     */
+    private static final int MAX_CURSOR_STEPS = 4;
+
+    /**
+     * The array the index was built from.
+     */
+    @Nullable
+    final SponsorSegment[] source;
+    private final SponsorSegment[] segments;
+    private final long[] starts;
+    /**
+     * Largest end of the segment and all segments before it.
+     */
+    private final long[] maxEnds;
+
+    /**
+     * Index of the first segment starting after the last lookup time.
+     * Only a hint, so races between threads are harmless.
+     */
+    private int nextCursor;
+    /**
+     * Index of the first segment ending at or after the last lookup time. Only a hint.
+     */
+    private int containingCursor;
+
+    SegmentIndex(@Nullable SponsorSegment[] source) {
+        this.source = source;
+        SponsorSegment[] segments = source == null ? new SponsorSegment[0] : source;
+        if (!isSorted(segments)) {
+            segments = segments.clone();
+            Arrays.sort(segments);
+        }
+        this.segments = segments;
+
+        final int count = segments.length;
+        starts = new long[count];
+        maxEnds = new long[count];
+        long maxEnd = Long.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            starts[i] = segments[i].start;
+            maxEnd = Math.max(maxEnd, segments[i].end);
+            maxEnds[i] = maxEnd;
+        }
+    }
+
+    boolean isEmpty() {
+        return segments.length == 0;
+    }
+
+    /**
+     * @return The first segment by start containing the time, or null if none.
+     */
+    @Nullable
+    SponsorSegment findContaining(final long millis) {
+        final int next = findNext(millis);
+        final int containing = findFirstEndingAtOrAfter(millis);
+        return containing < next ? segments[containing] : null;
+    }
+
+    /**
+     * @return The first segment starting after the time, or null if none.
+     */
+    @Nullable
+    SponsorSegment findNextAfter(final long millis) {
+        final int next = findNext(millis);
+        return next < segments.length ? segments[next] : null;
+    }
+
+    /**
+     * @return Index of the first segment starting after the time, or the segment count if none.
+     */
+    private int findNext(final long millis) {
+        int cursor = nextCursor;
+        final int count = starts.length;
+        if (cursor > count || (cursor > 0 && starts[cursor - 1] > millis)) {
+            cursor = binarySearch(starts, millis);
+        } else {
+            int steps = 0;
+            while (cursor < count && starts[cursor] <= millis) {
+                if (++steps > MAX_CURSOR_STEPS) {
+                    cursor = binarySearch(starts, millis);
+                    break;
+                }
+                cursor++;
+            }
+        }
+        nextCursor = cursor;
+        return cursor;
+    }
+
+    /**
+     * @return Index of the first segment whose largest end so far is at or after the time, which is also
+     * the first segment ending at or after the time, or the segment count if none.
+     */
+    private int findFirstEndingAtOrAfter(final long millis) {
+        int cursor = containingCursor;
+        final int count = maxEnds.length;
+        // maxEnds[i] >= millis is the same as maxEnds[i] > millis - 1
+        final long before = millis - 1;
+        if (cursor > count || (cursor > 0 && maxEnds[cursor - 1] > before)) {
+            cursor = binarySearch(maxEnds, before);
+        } else {
+            int steps = 0;
+            while (cursor < count && maxEnds[cursor] <= before) {
+                if (++steps > MAX_CURSOR_STEPS) {
+                    cursor = binarySearch(maxEnds, before);
+                    break;
+                }
+                cursor++;
+            }
+        }
+        containingCursor = cursor;
+        return cursor;
+    }
+
+    /**
+     * @return Index of the first value greater than the key, or the length if none.
+     */
+    private static int binarySearch(final long[] sortedValues, final long key) {
+        int low = 0;
+        int high = sortedValues.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (sortedValues[middle] <= key) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    private static boolean isSorted(final SponsorSegment[] segments) {
+        for (int i = 1; i < segments.length; i++) {
+            if (segments[i - 1].start > segments[i].start) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,84 @@
+package app.revanced.integrations.sponsorblock;
+
+import androidx.annotation.GuardedBy;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import app.revanced.integrations.patches.video.VideoSpeedPatch;
+import app.revanced.integrations.sponsorblock.objects.SponsorSegment;
+
+/**
+ * Schedules the automatic skip of the next segment.
+ * <p>
+ * Runs on its own thread, so network requests never delay a skip,
+ * and times the skip with {@link System#nanoTime()}, so wall clock changes do not move it.
+ * The delay is the video time left until the segment, divided by the playback speed.
+ * A skip is scheduled again on every video time update, which corrects for seeks and speed changes.
+ */
+final class SkipScheduler {
+    private static final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "sponsor-skip-scheduler");
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    @GuardedBy("SkipScheduler.class")
+    private static ScheduledFuture<?> pendingSkip;
+    @GuardedBy("SkipScheduler.class")
+    private static SponsorSegment pendingSegment;
+    /**
+     * {@link System#nanoTime()} the pending skip is due.
+     */
+    @GuardedBy("SkipScheduler.class")
+    private static long pendingSkipNanos;
+
+    /**
+     * A rescheduled skip moving less than this keeps the pending skip.
+     */
+    private static final long RESCHEDULE_TOLERANCE_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private SkipScheduler() {
+    }
+
+    /**
+     * Schedule the skip of a segment, replacing any other pending skip.
+     *
+     * @param videoTimeMillis  Video time at {@code observedNanos}.
+     * @param observedNanos    {@link System#nanoTime()} when the video time was reported.
+     * @param skip             Called at the start of the segment, on the scheduler thread.
+     */
+    static synchronized void schedule(SponsorSegment segment, long videoTimeMillis, long observedNanos, Runnable skip) {
+        float speed = VideoSpeedPatch.getPlaybackSpeed();
+        if (speed <= 0) speed = 1;
+
+        final long delayNanos = (long) (TimeUnit.MILLISECONDS.toNanos(segment.start - videoTimeMillis) / speed);
+        final long dueNanos = observedNanos + delayNanos;
+        if (pendingSkip != null && pendingSegment == segment && !pendingSkip.isDone()
+                && Math.abs(dueNanos - pendingSkipNanos) < RESCHEDULE_TOLERANCE_NANOS) {
+            return;
+        }
+
+        cancel();
+        pendingSegment = segment;
+        pendingSkipNanos = dueNanos;
+        pendingSkip = executor.schedule(skip, Math.max(0, dueNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Cancel the pending skip, if any.
+     */
+    static synchronized void cancel() {
+        if (pendingSkip != null) {
+            pendingSkip.cancel(false);
+            pendingSkip = null;
+            pendingSegment = null;
+        }
+    }
+}
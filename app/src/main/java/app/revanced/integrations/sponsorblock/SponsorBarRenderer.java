@@ -0,0 +1,84 @@
+package app.revanced.integrations.sponsorblock;
+
+import android.graphics.Canvas;
+import android.graphics.Path;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+
+import app.revanced.integrations.sponsorblock.objects.SponsorSegment;
+
+/**
+ * Draws the segments on the seekbar.
+ * <p>
+ * The segment rectangles of each category are kept in one {@link Path}, built again only when the segments,
+ * the video length or the bar bounds change. Each frame then draws one path per category.
+ * Paths are built around a vertical center of zero and moved to the bar, so a moving bar needs no rebuild.
+ * <p>
+ * Only used on the main thread.
+ */
+final class SponsorBarRenderer {
+    private static final EnumMap<SponsorBlockSettings.SegmentInfo, Path> paths = new EnumMap<>(SponsorBlockSettings.SegmentInfo.class);
+    /**
+     * Categories with segments, in the order of their first segment.
+     */
+    private static final ArrayList<SponsorBlockSettings.SegmentInfo> categories = new ArrayList<>();
+
+    private static SponsorSegment[] builtSegments;
+    private static long builtVideoLength;
+    private static float builtLeft;
+    private static float builtRight;
+    private static float builtThickness;
+
+    private SponsorBarRenderer() {
+    }
+
+    /**
+     * @param centerY Vertical center of the bar.
+     */
+    static void draw(Canvas canvas, SponsorSegment[] segments, long videoLength,
+                     float left, float right, float thickness, float centerY) {
+        if (segments != builtSegments || videoLength != builtVideoLength
+                || left != builtLeft || right != builtRight || thickness != builtThickness) {
+            build(segments, videoLength, left, right, thickness);
+        }
+        if (categories.isEmpty()) return;
+
+        final int saveCount = canvas.save();
+        canvas.translate(0, centerY);
+        for (int i = 0, size = categories.size(); i < size; i++) {
+            SponsorBlockSettings.SegmentInfo category = categories.get(i);
+            // The paint is looked up every frame, so color changes apply without a rebuild.
+            canvas.drawPath(paths.get(category), category.getPaint());
+        }
+        canvas.restoreToCount(saveCount);
+    }
+
+    private static void build(SponsorSegment[] segments, long videoLength,
+                              float left, float right, float thickness) {
+        builtSegments = segments;
+        builtVideoLength = videoLength;
+        builtLeft = left;
+        builtRight = right;
+        builtThickness = thickness;
+
+        for (Path path : paths.values()) {
+            path.rewind();
+        }
+        categories.clear();
+        if (segments == null || videoLength <= 0) return;
+
+        final float halfThickness = thickness / 2;
+        final float millisToPixels = 1f / (float) videoLength * (right - left);
+        for (SponsorSegment segment : segments) {
+            Path path = paths.get(segment.category);
+            if (path == null) {
+                path = new Path();
+                paths.put(segment.category, path);
+            }
+            if (!categories.contains(segment.category)) categories.add(segment.category);
+            path.addRect(segment.start * millisToPixels + left, -halfThickness,
+                    segment.end * millisToPixels + left, halfThickness, Path.Direction.CW);
+        }
+    }
+}
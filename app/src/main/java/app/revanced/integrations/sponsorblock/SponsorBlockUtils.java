@@ -367,7 +367,7 @@ public abstract class SponsorBlockUtils {
                     SponsorBlockSettings.SegmentInfo.UNSUBMITTED, null, false);
 
             Arrays.sort(segments);
-            sponsorSegmentsOfCurrentVideo = segments;
+            PlayerController.setSponsorSegmentsOfCurrentVideo(segments);
         } else {
             Toast.makeText(context, str("new_segment_mark_locations_first"), Toast.LENGTH_SHORT).show();
         }
@@ -6,26 +6,33 @@ import static app.revanced.integrations.sponsorblock.SponsorBlockUtils.videoHasS
 import static app.revanced.integrations.utils.ReVancedUtils.runOnMainThread;
 import static app.revanced.integrations.utils.StringRef.str;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.preference.EditTextPreference;
 import android.preference.Preference;
 import android.preference.PreferenceCategory;
+import android.util.JsonReader;
 import android.widget.Toast;
 
-import org.json.JSONArray;
+import androidx.annotation.Nullable;
+
 import org.json.JSONObject;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
 import app.revanced.integrations.requests.Requester;
 import app.revanced.integrations.requests.Route;
+import app.revanced.integrations.requests.SingleFlight;
 import app.revanced.integrations.settings.SettingsEnum;
 import app.revanced.integrations.sponsorblock.PlayerController;
 import app.revanced.integrations.sponsorblock.SponsorBlockSettings;
@@ -33,67 +40,303 @@ import app.revanced.integrations.sponsorblock.SponsorBlockUtils;
 import app.revanced.integrations.sponsorblock.SponsorBlockUtils.VoteOption;
 import app.revanced.integrations.sponsorblock.objects.SponsorSegment;
 import app.revanced.integrations.sponsorblock.objects.UserStats;
+import app.revanced.integrations.utils.LogHelper;
 import app.revanced.integrations.utils.ReVancedUtils;
 
 public class SBRequester {
     private static final String TIME_TEMPLATE = "%.3f";
+    /**
+     * Hex characters of the video id hash sent with {@link SBRoutes#GET_SEGMENTS_BY_HASH_PREFIX}.
+     * Each response has the segments of about 1 / 65536 of all videos with segments.
+     */
+    private static final int HASH_PREFIX_LENGTH = 4;
 
     private SBRequester() {
     }
 
-    @SuppressLint("SuspiciousIndentation")
-    public static synchronized SponsorSegment[] getSegments(String videoId) {
+    /**
+     * Segment fetches still running, by video id and categories.
+     */
+    private static final SingleFlight<String, List<SponsorSegment>> segmentFetches = new SingleFlight<>();
+
+    /**
+     * @return The segments of the video, from the cache if possible.
+     * Segments cached longer than {@link SettingsEnum#SB_CACHE_TTL_MINUTES} are fetched again in the background.
+     */
+    public static SponsorSegment[] getSegments(String videoId) {
+        final String categories = SponsorBlockSettings.getUrlCategories();
+        final long minDuration = (long) (SettingsEnum.SB_MIN_DURATION.getFloat() * 1000);
+
+        List<SponsorSegment> segments;
+        SegmentCache.Entry cached = SegmentCache.get(videoId, categories);
+        if (cached != null) {
+            if (cached.isStale()) {
+                ReVancedUtils.runOnBackgroundThread(() -> revalidateSegments(videoId, categories));
+            }
+            segments = cached.copySegments(minDuration);
+        } else {
+            List<SponsorSegment> fetched = fetchSegmentsShared(videoId, categories, false);
+            if (fetched == null) {
+                segments = new ArrayList<>();
+            } else {
+                SegmentCache.put(videoId, categories, fetched);
+                segments = new ArrayList<>(fetched.size());
+                // Copied, as other callers of the fetch get the same segments.
+                for (SponsorSegment segment : SegmentBatchCache.copy(fetched)) {
+                    if (segment.end - segment.start >= minDuration) segments.add(segment);
+                }
+            }
+        }
+
+        SponsorSegment[] array = segments.toArray(new SponsorSegment[0]);
+        if (array.length > 0) {
+            videoHasSegments = true;
+            timeWithoutSegments = SponsorBlockUtils.getTimeWithoutSegments(array);
+        }
+        return array;
+    }
+
+    /**
+     * Fetch the segments of a stale cache entry, and show them if they changed and the video is still playing.
+     */
+    private static void revalidateSegments(String videoId, String categories) {
+        List<SponsorSegment> fetched = fetchSegmentsShared(videoId, categories, false);
+        if (fetched != null && SegmentCache.put(videoId, categories, fetched)
+                && videoId.equals(PlayerController.getCurrentVideoId())) {
+            LogHelper.info(SBRequester.class, "Segments changed since cached for video: " + videoId);
+            PlayerController.executeDownloadSegments(videoId);
+        }
+    }
+
+    /**
+     * Fetch the segments of a video likely to be opened soon, such as a video in the feed, into the cache.
+     * Does nothing if the segments are cached and fresh. Must be called off the main thread.
+     */
+    public static void prefetchSegments(String videoId) {
+        if (!SettingsEnum.SB_ENABLED.getBoolean()) return;
+        // Nowhere to keep the segments.
+        if (SettingsEnum.SB_CACHE_MAX_SIZE_KB.getInt() <= 0 && !SettingsEnum.SB_HASH_PREFIX_LOOKUP.getBoolean()) return;
+
+        final String categories = SponsorBlockSettings.getUrlCategories();
+        SegmentCache.Entry cached = SegmentCache.get(videoId, categories);
+        if (cached != null && !cached.isStale()) return;
+
+        List<SponsorSegment> fetched = fetchSegmentsShared(videoId, categories, true);
+        if (fetched != null) SegmentCache.put(videoId, categories, fetched);
+    }
+
+    /**
+     * {@link #fetchSegments(String, String, boolean)}, shared with any fetch of the same segments already running.
+     * The segments returned may be returned to other callers as well.
+     */
+    @Nullable
+    private static List<SponsorSegment> fetchSegmentsShared(String videoId, String categories, boolean prefetch) {
+        try {
+            return segmentFetches.execute(videoId + '|' + categories, () -> fetchSegments(videoId, categories, prefetch));
+        } catch (Exception ex) {
+            LogHelper.printException(SBRequester.class, "Failed to fetch segments of video: " + videoId, ex);
+            return null;
+        }
+    }
+
+    /**
+     * @param prefetch If the video is not playing, and a failed request should not switch to the mirror.
+     * @return The segments of the enabled categories, not filtered by duration,
+     * or null if the request failed and nothing should be cached.
+     */
+    @Nullable
+    private static List<SponsorSegment> fetchSegments(String videoId, String categories, boolean prefetch) {
+        List<SponsorSegment> segments = SettingsEnum.SB_HASH_PREFIX_LOOKUP.getBoolean()
+                ? fetchSegmentsByHashPrefix(videoId, categories, prefetch)
+                : fetchSegmentsByVideoId(videoId, categories, prefetch);
+        // After the segment request is finished, as both requests use the few request slots of the server.
+        runVipCheck();
+        return segments;
+    }
+
+    /**
+     * @see #fetchSegments(String, String, boolean)
+     */
+    @Nullable
+    private static List<SponsorSegment> fetchSegmentsByVideoId(String videoId, String categories, boolean prefetch) {
         List<SponsorSegment> segments = new ArrayList<>();
         boolean dismiss = false;
+        HttpURLConnection connection = null;
         try {
-            HttpURLConnection connection = getConnectionFromRoute(SBRoutes.GET_SEGMENTS, videoId, SponsorBlockSettings.getUrlCategories());
+            connection = getConnectionFromRoute(SBRoutes.GET_SEGMENTS, videoId, categories);
             int responseCode = connection.getResponseCode();
-            runVipCheck();
 
             if (responseCode == 200) {
-                JSONArray responseArray = Requester.parseJSONArrayAndDisconnect(connection);
-                int length = responseArray.length();
-                for (int i = 0; i < length; i++) {
-                    JSONObject obj = (JSONObject) responseArray.get(i);
-                    JSONArray segment = obj.getJSONArray("segment");
-                    long start = (long) (segment.getDouble(0) * 1000);
-                    long end = (long) (segment.getDouble(1) * 1000);
-
-                    long minDuration = (long) (SettingsEnum.SB_MIN_DURATION.getFloat() * 1000);
-                    if ((end - start) < minDuration)
-                        continue;
-
-                    String category = obj.getString("category");
-                    String uuid = obj.getString("UUID");
-                    boolean locked = obj.getInt("locked") == 1;
-
-                    SponsorBlockSettings.SegmentInfo segmentCategory = SponsorBlockSettings.SegmentInfo.byCategoryKey(category);
-                    if (segmentCategory != null && segmentCategory.getBehaviour().getShowOnTimeBar()) {
-                        SponsorSegment sponsorSegment = new SponsorSegment(start, end, segmentCategory, uuid, locked);
-                        segments.add(sponsorSegment);
+                Requester.parseJsonStream(connection, reader -> {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        SponsorSegment sponsorSegment = parseSegment(reader);
+                        if (sponsorSegment != null) segments.add(sponsorSegment);
                     }
-                }
-                if (!segments.isEmpty()) {
-                    videoHasSegments = true;
-                    timeWithoutSegments = SponsorBlockUtils.getTimeWithoutSegments(segments.toArray(new SponsorSegment[0]));
-                }
+                    reader.endArray();
+                    return null;
+                });
+            }
+            dismiss = true;
+            Requester.releaseConnection(connection);
+            // 404 is the response for videos without segments.
+            return responseCode == 200 || responseCode == 404 ? segments : null;
+        } catch (Exception ex) {
+            if (connection != null) Requester.disconnect(connection);
+            if ((!Objects.equals(SettingsEnum.SB_API_URL.getString(), SettingsEnum.SB_API_MIRROR_URL.getString())) && !dismiss && !prefetch) setMirror();
+            ex.printStackTrace();
+        }
+
+        return null;
+    }
+
+    /**
+     * Look up the segments by the hash prefix of the video id, which returns the segments of many videos at once.
+     * All of them are kept in {@link SegmentBatchCache}, and later lookups of those videos need no request.
+     *
+     * @see #fetchSegments(String, String, boolean)
+     */
+    @Nullable
+    private static List<SponsorSegment> fetchSegmentsByHashPrefix(String videoId, String categories, boolean prefetch) {
+        final String hashPrefix = getHashPrefix(videoId);
+        List<SponsorSegment> cached = SegmentBatchCache.get(hashPrefix, categories, videoId);
+        if (cached != null) return cached;
+
+        Map<String, List<SponsorSegment>> videos = new HashMap<>();
+        boolean dismiss = false;
+        HttpURLConnection connection = null;
+        try {
+            connection = getConnectionFromRoute(SBRoutes.GET_SEGMENTS_BY_HASH_PREFIX, hashPrefix, categories);
+            int responseCode = connection.getResponseCode();
+
+            if (responseCode == 200) {
+                Requester.parseJsonStream(connection, reader -> {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        parseHashPrefixVideo(reader, videos);
+                    }
+                    reader.endArray();
+                    return null;
+                });
             }
             dismiss = true;
-            connection.disconnect();
+            Requester.releaseConnection(connection);
+            // 404 is the response if no video with the hash prefix has segments.
+            if (responseCode != 200 && responseCode != 404) return null;
+
+            SegmentBatchCache.put(hashPrefix, categories, videos);
+            List<SponsorSegment> segments = videos.get(videoId);
+            return segments == null ? new ArrayList<>() : SegmentBatchCache.copy(segments);
         } catch (Exception ex) {
-            if ((!Objects.equals(SettingsEnum.SB_API_URL.getString(), SettingsEnum.SB_API_MIRROR_URL.getString())) && !dismiss) setMirror();
+            if (connection != null) Requester.disconnect(connection);
+            if ((!Objects.equals(SettingsEnum.SB_API_URL.getString(), SettingsEnum.SB_API_MIRROR_URL.getString())) && !dismiss && !prefetch) setMirror();
             ex.printStackTrace();
         }
 
-        return segments.toArray(new SponsorSegment[0]);
+        return null;
+    }
+
+    /**
+     * Read a video of the {@link SBRoutes#GET_SEGMENTS_BY_HASH_PREFIX} response into the map.
+     */
+    private static void parseHashPrefixVideo(JsonReader reader, Map<String, List<SponsorSegment>> videos) throws IOException {
+        String videoId = null;
+        List<SponsorSegment> segments = new ArrayList<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "videoID":
+                    videoId = reader.nextString();
+                    break;
+                case "segments":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        SponsorSegment segment = parseSegment(reader);
+                        if (segment != null) segments.add(segment);
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (videoId != null) videos.put(videoId, segments);
+    }
+
+    /**
+     * @return The first {@link #HASH_PREFIX_LENGTH} lowercase hex characters of the SHA-256 hash of the video id.
+     */
+    private static String getHashPrefix(String videoId) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(videoId.getBytes(StandardCharsets.UTF_8));
+            StringBuilder prefix = new StringBuilder(HASH_PREFIX_LENGTH);
+            for (int i = 0; prefix.length() < HASH_PREFIX_LENGTH; i++) {
+                prefix.append(Character.forDigit((hash[i] >> 4) & 0xF, 16));
+                if (prefix.length() < HASH_PREFIX_LENGTH) prefix.append(Character.forDigit(hash[i] & 0xF, 16));
+            }
+            return prefix.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex); // should never happen, SHA-256 is always available
+        }
+    }
+
+    /**
+     * Read a segment of the {@link SBRoutes#GET_SEGMENTS} response, skipping the fields not used.
+     *
+     * @return The segment, or null if it is not shown or incomplete.
+     */
+    @Nullable
+    private static SponsorSegment parseSegment(JsonReader reader) throws IOException {
+        long start = -1, end = -1;
+        String category = null;
+        String uuid = null;
+        boolean locked = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "segment":
+                    reader.beginArray();
+                    start = (long) (reader.nextDouble() * 1000);
+                    end = (long) (reader.nextDouble() * 1000);
+                    while (reader.hasNext()) reader.skipValue();
+                    reader.endArray();
+                    break;
+                case "category":
+                    category = reader.nextString();
+                    break;
+                case "UUID":
+                    uuid = reader.nextString();
+                    break;
+                case "locked":
+                    locked = reader.nextInt() == 1;
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (start < 0 || category == null || uuid == null) return null;
+
+        SponsorBlockSettings.SegmentInfo segmentCategory = SponsorBlockSettings.SegmentInfo.byCategoryKey(category);
+        if (segmentCategory == null || !segmentCategory.getBehaviour().getShowOnTimeBar()) return null;
+
+        return new SponsorSegment(start, end, segmentCategory, uuid, locked);
     }
 
     public static void submitSegments(String videoId, String uuid, float startTime, float endTime, String category, Runnable toastRunnable) {
+        HttpURLConnection connection = null;
         try {
             String start = String.format(Locale.US, TIME_TEMPLATE, startTime);
             String end = String.format(Locale.US, TIME_TEMPLATE, endTime);
             String duration = String.valueOf(PlayerController.lastKnownVideoLength / 1000);
-            HttpURLConnection connection = getConnectionFromRoute(SBRoutes.SUBMIT_SEGMENTS, videoId, uuid, start, end, category, duration);
+            connection = getConnectionFromRoute(SBRoutes.SUBMIT_SEGMENTS, videoId, uuid, start, end, category, duration);
             int responseCode = connection.getResponseCode();
 
             switch (responseCode) {
@@ -104,42 +347,47 @@ public class SBRequester {
                     SponsorBlockUtils.messageToToast = str("submit_failed_duplicate");
                     break;
                 case 403:
-                    SponsorBlockUtils.messageToToast = str("submit_failed_forbidden", Requester.parseErrorJsonAndDisconnect(connection));
+                    SponsorBlockUtils.messageToToast = str("submit_failed_forbidden", Requester.parseErrorJson(connection));
                     break;
                 case 429:
                     SponsorBlockUtils.messageToToast = str("submit_failed_rate_limit");
                     break;
                 case 400:
-                    SponsorBlockUtils.messageToToast = str("submit_failed_invalid", Requester.parseErrorJsonAndDisconnect(connection));
+                    SponsorBlockUtils.messageToToast = str("submit_failed_invalid", Requester.parseErrorJson(connection));
                     break;
                 default:
                     SponsorBlockUtils.messageToToast = str("submit_failed_unknown_error", responseCode, connection.getResponseMessage());
                     break;
             }
             runOnMainThread(toastRunnable);
-            connection.disconnect();
+            Requester.releaseConnection(connection);
         } catch (Exception ex) {
+            if (connection != null) Requester.disconnect(connection);
             ex.printStackTrace();
         }
     }
 
     public static void sendViewCountRequest(SponsorSegment segment) {
+        HttpURLConnection connection = null;
         try {
-            HttpURLConnection connection = getConnectionFromRoute(SBRoutes.VIEWED_SEGMENT, segment.uuid);
-            connection.disconnect();
+            connection = getConnectionFromRoute(SBRoutes.VIEWED_SEGMENT, segment.uuid);
+            connection.getResponseCode();
+            Requester.releaseConnection(connection);
         } catch (Exception ex) {
+            if (connection != null) Requester.disconnect(connection);
             ex.printStackTrace();
         }
     }
 
     public static void voteForSegment(SponsorSegment segment, VoteOption voteOption, Context context, String... args) {
         ReVancedUtils.runOnBackgroundThread(() -> {
+            HttpURLConnection connection = null;
             try {
                 String segmentUuid = segment.uuid;
                 String uuid = SettingsEnum.SB_UUID.getString();
                 String vote = Integer.toString(voteOption == VoteOption.UPVOTE ? 1 : 0);
 
-                HttpURLConnection connection = voteOption == VoteOption.CATEGORY_CHANGE
+                connection = voteOption == VoteOption.CATEGORY_CHANGE
                         ? getConnectionFromRoute(SBRoutes.VOTE_ON_SEGMENT_CATEGORY, segmentUuid, uuid, args[0])
                         : getConnectionFromRoute(SBRoutes.VOTE_ON_SEGMENT_QUALITY, segmentUuid, uuid, vote);
                 int responseCode = connection.getResponseCode();
@@ -149,15 +397,16 @@ public class SBRequester {
                         SponsorBlockUtils.messageToToast = str("vote_succeeded");
                         break;
                     case 403:
-                        SponsorBlockUtils.messageToToast = str("vote_failed_forbidden", Requester.parseErrorJsonAndDisconnect(connection));
+                        SponsorBlockUtils.messageToToast = str("vote_failed_forbidden", Requester.parseErrorJson(connection));
                         break;
                     default:
                         SponsorBlockUtils.messageToToast = str("vote_failed_unknown_error", responseCode, connection.getResponseMessage());
                         break;
                 }
                 runOnMainThread(() -> Toast.makeText(context, SponsorBlockUtils.messageToToast, Toast.LENGTH_LONG).show());
-                connection.disconnect();
+                Requester.releaseConnection(connection);
             } catch (Exception ex) {
+                if (connection != null) Requester.disconnect(connection);
                 ex.printStackTrace();
             }
         });
@@ -185,8 +434,9 @@ public class SBRequester {
 
     public static void setUsername(String username, EditTextPreference preference, Runnable toastRunnable) {
         ReVancedUtils.runOnBackgroundThread(() -> {
+            HttpURLConnection connection = null;
             try {
-                HttpURLConnection connection = getConnectionFromRoute(SBRoutes.CHANGE_USERNAME, SettingsEnum.SB_UUID.getString(), username);
+                connection = getConnectionFromRoute(SBRoutes.CHANGE_USERNAME, SettingsEnum.SB_UUID.getString(), username);
                 int responseCode = connection.getResponseCode();
 
                 if (responseCode == 200) {
@@ -199,8 +449,9 @@ public class SBRequester {
                     SponsorBlockUtils.messageToToast = str("stats_username_change_unknown_error", responseCode, connection.getResponseMessage());
                 }
                 runOnMainThread(toastRunnable);
-                connection.disconnect();
+                Requester.releaseConnection(connection);
             } catch (Exception ex) {
+                if (connection != null) Requester.disconnect(connection);
                 ex.printStackTrace();
             }
         });
@@ -239,6 +490,6 @@ public class SBRequester {
     }
 
     private static JSONObject getJSONObject(Route route, String... params) throws Exception {
-        return Requester.parseJSONObjectAndDisconnect(getConnectionFromRoute(route, params));
+        return Requester.parseJSONObject(getConnectionFromRoute(route, params));
     }
 }
@@ -8,6 +8,7 @@ import app.revanced.integrations.requests.Route;
 class SBRoutes {
     static final Route IS_USER_VIP = new Route(GET, "/api/isUserVIP?userID={user_id}");
     static final Route GET_SEGMENTS = new Route(GET, "/api/skipSegments?videoID={video_id}&categories={categories}");
+    static final Route GET_SEGMENTS_BY_HASH_PREFIX = new Route(GET, "/api/skipSegments/{hash_prefix}?categories={categories}");
     static final Route VIEWED_SEGMENT = new Route(POST, "/api/viewedVideoSponsorTime?UUID={segment_id}");
     static final Route GET_USER_STATS = new Route(GET, "/api/userInfo?userID={user_id}&values=[\"userName\", \"minutesSaved\", \"segmentCount\", \"viewCount\"]");
     static final Route CHANGE_USERNAME = new Route(POST, "/api/setUsername?userID={user_id}&username={username}");
@@ -0,0 +1,88 @@
+package app.revanced.integrations.sponsorblock.requests;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import app.revanced.integrations.settings.SettingsEnum;
+import app.revanced.integrations.sponsorblock.objects.SponsorSegment;
+
+/**
+ * Memory cache of the {@link SBRoutes#GET_SEGMENTS_BY_HASH_PREFIX} responses.
+ * <p>
+ * A response has the segments of every video whose id hash starts with the prefix,
+ * so a video with the same hash prefix but not in the response has no segments.
+ * Responses younger than {@link SettingsEnum#SB_CACHE_TTL_MINUTES} answer the lookups of all those videos.
+ */
+final class SegmentBatchCache {
+    /**
+     * Responses kept, the least recently used are removed first.
+     */
+    private static final int MAX_BATCHES = 32;
+
+    @GuardedBy("SegmentBatchCache.class")
+    private static final LinkedHashMap<String, Batch> batches = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Batch> eldest) {
+            return size() > MAX_BATCHES;
+        }
+    };
+
+    private SegmentBatchCache() {
+    }
+
+    private static final class Batch {
+        final long fetchedMillis;
+        /**
+         * Video ids to their segments of the enabled categories, not filtered by duration.
+         */
+        final Map<String, List<SponsorSegment>> videos;
+
+        Batch(long fetchedMillis, Map<String, List<SponsorSegment>> videos) {
+            this.fetchedMillis = fetchedMillis;
+            this.videos = videos;
+        }
+    }
+
+    /**
+     * @return New copies of the segments of the video, an empty list if the video has no segments,
+     * or null if no fresh response of the hash prefix is cached.
+     */
+    @Nullable
+    static synchronized List<SponsorSegment> get(String hashPrefix, String categories, String videoId) {
+        final String key = hashPrefix + categories;
+        Batch batch = batches.get(key);
+        if (batch == null) return null;
+
+        final long ttlMillis = SettingsEnum.SB_CACHE_TTL_MINUTES.getInt() * 60 * 1000L;
+        if (System.currentTimeMillis() - batch.fetchedMillis >= ttlMillis) {
+            batches.remove(key);
+            return null;
+        }
+
+        List<SponsorSegment> segments = batch.videos.get(videoId);
+        return segments == null ? new ArrayList<>() : copy(segments);
+    }
+
+    /**
+     * @param videos Video ids in the response to their segments. Must not be modified afterwards.
+     */
+    static synchronized void put(String hashPrefix, String categories, Map<String, List<SponsorSegment>> videos) {
+        batches.put(hashPrefix + categories, new Batch(System.currentTimeMillis(), videos));
+    }
+
+    /**
+     * @return New segments, as playback state such as {@link SponsorSegment#hasAutoSkipped} is kept in them.
+     */
+    static List<SponsorSegment> copy(List<SponsorSegment> segments) {
+        List<SponsorSegment> copies = new ArrayList<>(segments.size());
+        for (SponsorSegment segment : segments) {
+            copies.add(new SponsorSegment(segment.start, segment.end, segment.category, segment.uuid, segment.isLocked));
+        }
+        return copies;
+    }
+}
@@ -0,0 +1,253 @@
+package app.revanced.integrations.sponsorblock.requests;
+
+import android.content.Context;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import app.revanced.integrations.settings.SettingsEnum;
+import app.revanced.integrations.sponsorblock.SponsorBlockSettings;
+import app.revanced.integrations.sponsorblock.objects.SponsorSegment;
+import app.revanced.integrations.utils.LogHelper;
+import app.revanced.integrations.utils.ReVancedUtils;
+
+/**
+ * Disk cache of the segments of each video and set of enabled categories.
+ * <p>
+ * Entries younger than {@link SettingsEnum#SB_CACHE_TTL_MINUTES} are fresh.
+ * Older entries are still used, but should be fetched again in the background.
+ * The least recently used entries are deleted when the cache grows over {@link SettingsEnum#SB_CACHE_MAX_SIZE_KB},
+ * and a size of zero disables the cache.
+ * <p>
+ * Each entry is a file, and the last modified time of the file is its last use, so the order survives restarts.
+ */
+final class SegmentCache {
+    private static final String DIRECTORY_NAME = "sponsorblock_segments";
+    private static final int FILE_VERSION = 1;
+
+    /**
+     * Entry file names to their size, least recently used first.
+     */
+    @GuardedBy("SegmentCache.class")
+    private static final LinkedHashMap<String, Long> files = new LinkedHashMap<>(16, 0.75f, true);
+    @GuardedBy("SegmentCache.class")
+    private static long totalBytes;
+    @GuardedBy("SegmentCache.class")
+    @Nullable
+    private static File directory;
+
+    private SegmentCache() {
+    }
+
+    static final class Entry {
+        final long fetchedMillis;
+        /**
+         * Segments of the enabled categories, not filtered by duration.
+         * Do not modify or hand out, use {@link #copySegments(long)}.
+         */
+        private final SponsorSegment[] segments;
+
+        private Entry(long fetchedMillis, SponsorSegment[] segments) {
+            this.fetchedMillis = fetchedMillis;
+            this.segments = segments;
+        }
+
+        boolean isStale() {
+            final long ttlMillis = SettingsEnum.SB_CACHE_TTL_MINUTES.getInt() * 60 * 1000L;
+            return System.currentTimeMillis() - fetchedMillis >= ttlMillis;
+        }
+
+        /**
+         * @return New segments, as playback state such as {@link SponsorSegment#hasAutoSkipped} is kept in them.
+         */
+        List<SponsorSegment> copySegments(long minDuration) {
+            List<SponsorSegment> copies = new ArrayList<>(segments.length);
+            for (SponsorSegment segment : segments) {
+                if (segment.end - segment.start < minDuration) continue;
+                copies.add(new SponsorSegment(segment.start, segment.end, segment.category, segment.uuid, segment.isLocked));
+            }
+            return copies;
+        }
+    }
+
+    /**
+     * @return The cached segments, or null if not cached or the cache is disabled.
+     */
+    @Nullable
+    static synchronized Entry get(String videoId, String categories) {
+        File directory = getDirectory();
+        if (directory == null) return null;
+
+        String name = getFileName(videoId, categories);
+        if (files.get(name) == null) return null;
+
+        File file = new File(directory, name);
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != FILE_VERSION || !input.readUTF().equals(videoId) || !input.readUTF().equals(categories)) {
+                throw new IOException("Unexpected cache file: " + name);
+            }
+            final long fetchedMillis = input.readLong();
+            final int count = input.readInt();
+            List<SponsorSegment> segments = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                final long start = input.readLong();
+                final long end = input.readLong();
+                final String category = input.readUTF();
+                final String uuid = input.readUTF();
+                final boolean locked = input.readBoolean();
+                SponsorBlockSettings.SegmentInfo segmentCategory = SponsorBlockSettings.SegmentInfo.byCategoryKey(category);
+                if (segmentCategory != null) {
+                    segments.add(new SponsorSegment(start, end, segmentCategory, uuid, locked));
+                }
+            }
+
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+            return new Entry(fetchedMillis, segments.toArray(new SponsorSegment[0]));
+        } catch (IOException ex) {
+            LogHelper.printException(SegmentCache.class, "Failed to read cached segments of video: " + videoId, ex);
+            remove(name);
+            return null;
+        }
+    }
+
+    /**
+     * Cache the segments of a video, and delete the least recently used entries if the cache is full.
+     *
+     * @param segments Segments of the enabled categories, not filtered by duration.
+     * @return If the segments are different from the segments cached before.
+     */
+    static synchronized boolean put(String videoId, String categories, List<SponsorSegment> segments) {
+        File directory = getDirectory();
+        if (directory == null) return true;
+
+        Entry previous = get(videoId, categories);
+        String name = getFileName(videoId, categories);
+        File temporary = new File(directory, name + ".tmp");
+        File file = new File(directory, name);
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                output.writeInt(FILE_VERSION);
+                output.writeUTF(videoId);
+                output.writeUTF(categories);
+                output.writeLong(System.currentTimeMillis());
+                output.writeInt(segments.size());
+                for (SponsorSegment segment : segments) {
+                    output.writeLong(segment.start);
+                    output.writeLong(segment.end);
+                    output.writeUTF(segment.category.getKey());
+                    output.writeUTF(segment.uuid);
+                    output.writeBoolean(segment.isLocked);
+                }
+            }
+            if (!temporary.renameTo(file)) throw new IOException("Failed to rename: " + temporary);
+
+            Long previousSize = files.put(name, file.length());
+            totalBytes += file.length() - (previousSize == null ? 0 : previousSize);
+            evict(directory, SettingsEnum.SB_CACHE_MAX_SIZE_KB.getInt() * 1024L);
+        } catch (IOException ex) {
+            LogHelper.printException(SegmentCache.class, "Failed to cache segments of video: " + videoId, ex);
+            //noinspection ResultOfMethodCallIgnored
+            temporary.delete();
+        }
+
+        return previous == null || !sameSegments(previous.segments, segments);
+    }
+
+    /**
+     * @return The cache directory, with the entries found in it loaded, or null if the cache is disabled.
+     */
+    @GuardedBy("SegmentCache.class")
+    @Nullable
+    private static File getDirectory() {
+        final long maxBytes = SettingsEnum.SB_CACHE_MAX_SIZE_KB.getInt() * 1024L;
+        if (directory != null) {
+            if (maxBytes <= 0) {
+                evict(directory, 0);
+                return null;
+            }
+            return directory;
+        }
+        if (maxBytes <= 0) return null;
+
+        Context context = ReVancedUtils.getContext();
+        if (context == null) return null;
+
+        File cacheDirectory = new File(context.getCacheDir(), DIRECTORY_NAME);
+        if (!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs()) {
+            LogHelper.printException(SegmentCache.class, "Failed to create cache directory: " + cacheDirectory);
+            return null;
+        }
+
+        File[] entries = cacheDirectory.listFiles();
+        if (entries != null) {
+            Arrays.sort(entries, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+            for (File entry : entries) {
+                if (entry.getName().endsWith(".tmp")) {
+                    //noinspection ResultOfMethodCallIgnored
+                    entry.delete();
+                    continue;
+                }
+                files.put(entry.getName(), entry.length());
+                totalBytes += entry.length();
+            }
+        }
+        directory = cacheDirectory;
+        evict(directory, maxBytes);
+        return directory;
+    }
+
+    @GuardedBy("SegmentCache.class")
+    private static void evict(File directory, long maxBytes) {
+        Iterator<Map.Entry<String, Long>> iterator = files.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            totalBytes -= entry.getValue();
+            iterator.remove();
+            //noinspection ResultOfMethodCallIgnored
+            new File(directory, entry.getKey()).delete();
+        }
+    }
+
+    @GuardedBy("SegmentCache.class")
+    private static void remove(String name) {
+        Long size = files.remove(name);
+        if (size != null) totalBytes -= size;
+        if (directory != null) {
+            //noinspection ResultOfMethodCallIgnored
+            new File(directory, name).delete();
+        }
+    }
+
+    private static String getFileName(String videoId, String categories) {
+        return videoId + '_' + Integer.toHexString(categories.hashCode());
+    }
+
+    private static boolean sameSegments(SponsorSegment[] cached, List<SponsorSegment> segments) {
+        if (cached.length != segments.size()) return false;
+        for (int i = 0; i < cached.length; i++) {
+            SponsorSegment a = cached[i];
+            SponsorSegment b = segments.get(i);
+            if (a.start != b.start || a.end != b.end || a.category != b.category
+                    || a.isLocked != b.isLocked || !a.uuid.equals(b.uuid)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
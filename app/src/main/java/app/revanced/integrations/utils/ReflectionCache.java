@@ -0,0 +1,89 @@
+package app.revanced.integrations.utils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Fields and methods of app classes found by reflection, looked up once instead of on every call.
+ * <p>
+ * Each accessor remembers the class it was last looked up for, as the hooked objects are nearly always
+ * of the same class, and only looks up again for another class.
+ * Method handles would be faster still, but need Android 8.
+ */
+public final class ReflectionCache {
+    private ReflectionCache() {
+    }
+
+    /**
+     * A member and the class it was looked up for, so both are read together.
+     */
+    private static final class Resolved<T> {
+        final Class<?> owner;
+        final T member;
+
+        Resolved(Class<?> owner, T member) {
+            this.owner = owner;
+            this.member = member;
+        }
+    }
+
+    /**
+     * A field declared by the class of the objects it is read from. Private fields are made accessible.
+     */
+    public static final class FieldAccessor {
+        private final String name;
+        private volatile Resolved<Field> resolved;
+
+        public FieldAccessor(String name) {
+            this.name = name;
+        }
+
+        public Field resolve(Class<?> owner) throws NoSuchFieldException {
+            Resolved<Field> current = resolved;
+            if (current != null && current.owner == owner) return current.member;
+
+            Field field = owner.getDeclaredField(name);
+            field.setAccessible(true);
+            resolved = new Resolved<>(owner, field);
+            return field;
+        }
+
+        public Object get(Object instance) throws NoSuchFieldException, IllegalAccessException {
+            return resolve(instance.getClass()).get(instance);
+        }
+    }
+
+    /**
+     * A public method, declared or inherited, of the class of the objects it is invoked on.
+     */
+    public static final class MethodAccessor {
+        private final String name;
+        private final Class<?>[] parameterTypes;
+        private volatile Resolved<Method> resolved;
+
+        public MethodAccessor(String name, Class<?>... parameterTypes) {
+            this.name = name;
+            this.parameterTypes = parameterTypes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Method resolve(Class<?> owner) throws NoSuchMethodException {
+            Resolved<Method> current = resolved;
+            if (current != null && current.owner == owner) return current.member;
+
+            Method method = owner.getMethod(name, parameterTypes);
+            method.setAccessible(true);
+            resolved = new Resolved<>(owner, method);
+            return method;
+        }
+
+        public Object invoke(Object instance, Object... args)
+                throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+            return resolve(instance.getClass()).invoke(instance, args);
+        }
+    }
+}
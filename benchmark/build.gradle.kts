@@ -0,0 +1,52 @@
+plugins {
+    java
+    id("me.champeau.jmh") version "0.7.2"
+}
+
+// Pure JVM benchmarks of the Litho filters, the reflection cache and the RYD puzzle solver. Run with: ./gradlew :benchmark:jmh
+// Android and settings dependencies of the filters are replaced by the stand-ins in src/jmh/java.
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// The filter sources under test, copied from the app. Everything else they use comes from the stand-ins.
+val filterSources by tasks.registering(Sync::class) {
+    from("../app/src/main/java") {
+        include("app/revanced/integrations/patches/ads/BlockResult.java")
+        include("app/revanced/integrations/patches/ads/BytePatternMatcher.java")
+        include("app/revanced/integrations/patches/ads/CommentsPatch.java")
+        include("app/revanced/integrations/patches/ads/CustomPatterns.java")
+        include("app/revanced/integrations/patches/ads/ExtendedLithoFilterPatch.java")
+        include("app/revanced/integrations/patches/ads/FilterStage.java")
+        include("app/revanced/integrations/patches/ads/GeneralAdsPatch.java")
+        include("app/revanced/integrations/patches/ads/LithoFilterPatch.java")
+        include("app/revanced/integrations/patches/ads/LithoFilterTrace.java")
+        include("app/revanced/integrations/patches/ads/PathSegmentIndex.java")
+        include("app/revanced/integrations/patches/ads/PatternMatcher.java")
+        include("app/revanced/integrations/patches/ads/VerdictCache.java")
+        include("app/revanced/integrations/returnyoutubedislike/requests/ProofOfWorkSolver.java")
+        include("app/revanced/integrations/utils/ReflectionCache.java")
+    }
+    into(layout.buildDirectory.dir("generated/filterSources"))
+}
+
+sourceSets {
+    named("jmh") {
+        java.srcDir(filterSources)
+    }
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    // Report allocations per operation alongside the time per operation.
+    profilers.add("gc")
+    resultFormat.set("JSON")
+}
+
+// Fails if the path segment index and the substring matcher give different verdicts on the recorded corpus.
+tasks.register<JavaExec>("segmentIndexCompatibility") {
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("app.revanced.integrations.patches.ads.SegmentIndexCompatibility")
+}
@@ -0,0 +1,7 @@
+package android.view;
+
+/**
+ * Stand-in for the Android View, only referenced by the filter sources.
+ */
+public class View {
+}
@@ -0,0 +1,12 @@
+package app.revanced.integrations.adremover;
+
+import android.view.View;
+
+/**
+ * Stand-in for the app AdRemoverAPI, only referenced by the filter sources.
+ */
+public class AdRemoverAPI {
+
+    public static void HideViewWithLayout1dp(View view) {
+    }
+}
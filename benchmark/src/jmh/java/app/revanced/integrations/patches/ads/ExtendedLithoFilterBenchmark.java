@@ -0,0 +1,72 @@
+package app.revanced.integrations.patches.ads;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import app.revanced.integrations.settings.SettingsEnum;
+
+/**
+ * Replays recorded component paths with synthetic protobuf buffers
+ * through {@link ExtendedLithoFilterPatch#InflatedLithoView(String, ByteBuffer)}.
+ * Each operation filters one component.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExtendedLithoFilterBenchmark {
+    /**
+     * If the buffers are direct, and have no backing array.
+     */
+    @Param({"false", "true"})
+    public boolean directBuffers;
+
+    private String[] paths;
+    private ByteBuffer[] buffers;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        // Enable every buffer rule, the worst case for the buffer search.
+        for (SettingsEnum setting : new SettingsEnum[]{
+                SettingsEnum.HIDE_SHARE_BUTTON,
+                SettingsEnum.HIDE_REPORT_BUTTON,
+                SettingsEnum.HIDE_CREATE_CLIP_BUTTON,
+                SettingsEnum.HIDE_MIX_PLAYLISTS,
+                SettingsEnum.HIDE_CAPTIONS_MENU,
+                SettingsEnum.HIDE_LOOP_MENU,
+                SettingsEnum.HIDE_AMBIENT_MENU,
+                SettingsEnum.HIDE_NERDS_MENU,
+                SettingsEnum.HIDE_DOWNLOAD_BUTTON,
+        }) {
+            setting.setValue(true);
+        }
+
+        LithoCorpus corpus = LithoCorpus.load();
+        paths = corpus.paths;
+        buffers = corpus.buffers(directBuffers);
+        next = 0;
+    }
+
+    @Benchmark
+    public boolean inflatedLithoView() {
+        final int i = next;
+        next = i + 1 == paths.length ? 0 : i + 1;
+        return ExtendedLithoFilterPatch.InflatedLithoView(paths[i], buffers[i]);
+    }
+}
@@ -0,0 +1,114 @@
+package app.revanced.integrations.patches.ads;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Recorded Litho component paths, with synthetic protobuf buffers for each component.
+ */
+final class LithoCorpus {
+    /**
+     * Strings found in real component buffers, embedded into the synthetic buffers.
+     */
+    private static final String[] BUFFER_STRINGS = {
+            "yt_outline_share",
+            "yt_outline_flag",
+            "yt_outline_scissors",
+            "yt_outline_overflow_vertical",
+            "header_store_button",
+            "mix-watch",
+            "&list=",
+            "_caption",
+            "_closed",
+            "_1_",
+            "_screen",
+            "_statistic",
+            "https://i.ytimg.com/vi/",
+            "watch?v=",
+    };
+
+    final String[] paths;
+    final String[] identifiers;
+
+    private LithoCorpus(String[] paths, String[] identifiers) {
+        this.paths = paths;
+        this.identifiers = identifiers;
+    }
+
+    int size() {
+        return paths.length;
+    }
+
+    static LithoCorpus load() throws IOException {
+        List<String> paths = new ArrayList<>();
+        List<String> identifiers = new ArrayList<>();
+
+        try (InputStream stream = LithoCorpus.class.getResourceAsStream("/litho_paths.txt")) {
+            if (stream == null) throw new IOException("Missing litho_paths.txt");
+            BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] columns = line.split("\t");
+                paths.add(columns[0]);
+                identifiers.add(columns.length > 1 ? columns[1] : null);
+            }
+        }
+
+        return new LithoCorpus(paths.toArray(new String[0]), identifiers.toArray(new String[0]));
+    }
+
+    /**
+     * @return A corpus of {@code count} components cycling through this corpus,
+     * each with a distinct path so no two components share a verdict cache entry.
+     */
+    LithoCorpus unique(final int count) {
+        String[] uniquePaths = new String[count];
+        String[] uniqueIdentifiers = new String[count];
+        for (int i = 0; i < count; i++) {
+            uniquePaths[i] = paths[i % paths.length] + "|ContainerType|" + i;
+            uniqueIdentifiers[i] = identifiers[i % identifiers.length];
+        }
+        return new LithoCorpus(uniquePaths, uniqueIdentifiers);
+    }
+
+    StringBuilder[] pathBuilders() {
+        StringBuilder[] builders = new StringBuilder[paths.length];
+        for (int i = 0; i < paths.length; i++) builders[i] = new StringBuilder(paths[i]);
+        return builders;
+    }
+
+    /**
+     * @param direct If the buffers are direct, and have no backing array.
+     * @return A deterministic pseudo protobuf buffer for each component.
+     */
+    ByteBuffer[] buffers(final boolean direct) {
+        Random random = new Random(paths.length);
+        ByteBuffer[] buffers = new ByteBuffer[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            byte[] bytes = new byte[500 + random.nextInt(6000)];
+            random.nextBytes(bytes);
+            for (int s = random.nextInt(4); s > 0; s--) {
+                byte[] embedded = BUFFER_STRINGS[random.nextInt(BUFFER_STRINGS.length)]
+                        .getBytes(StandardCharsets.UTF_8);
+                System.arraycopy(embedded, 0, bytes, random.nextInt(bytes.length - embedded.length), embedded.length);
+            }
+
+            if (direct) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+                buffer.put(bytes).flip();
+                buffers[i] = buffer;
+            } else {
+                buffers[i] = ByteBuffer.wrap(bytes);
+            }
+        }
+        return buffers;
+    }
+}
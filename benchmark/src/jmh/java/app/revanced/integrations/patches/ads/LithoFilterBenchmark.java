@@ -0,0 +1,89 @@
+package app.revanced.integrations.patches.ads;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import app.revanced.integrations.settings.SettingsEnum;
+
+/**
+ * Replays recorded component paths through {@link LithoFilterPatch#filter(StringBuilder, String)}.
+ * Each operation filters one component.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LithoFilterBenchmark {
+    /**
+     * repeated: the recorded components over and over, as when scrolling a feed.
+     * unique: every component has a distinct path, so the verdict cache always misses.
+     */
+    @Param({"repeated", "unique"})
+    public String corpus;
+
+    /**
+     * none: the user custom filter is disabled.
+     * few: a handful of plain entries.
+     * hundreds: several hundred entries, a third of them with anchors or wildcards.
+     */
+    @Param({"none", "few", "hundreds"})
+    public String customFilter;
+
+    /**
+     * matcher: the substring matcher.
+     * segments: the path segment index.
+     */
+    @Param({"matcher", "segments"})
+    public String pathLookup;
+
+    private StringBuilder[] paths;
+    private String[] identifiers;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        String entries = "shopping_carousel,donation_shelf,_teaser,|ticket_";
+        if (customFilter.equals("hundreds")) {
+            var builder = new StringBuilder(entries);
+            for (int i = 0; i < 300; i++) {
+                builder.append(", ");
+                switch (i % 3) {
+                    case 0: builder.append("custom_shelf_").append(i); break;
+                    case 1: builder.append("^ContainerType|custom_").append(i).append("*"); break;
+                    default: builder.append("*custom_").append(i).append(".eml$"); break;
+                }
+            }
+            entries = builder.toString();
+        }
+        SettingsEnum.ADREMOVER_CUSTOM_FILTER.setValue(entries);
+        SettingsEnum.ADREMOVER_USER_FILTER.setValue(!customFilter.equals("none"));
+        SettingsEnum.ADREMOVER_SEGMENT_INDEX.setValue(pathLookup.equals("segments"));
+
+        LithoCorpus recorded = LithoCorpus.load();
+        LithoCorpus components = corpus.equals("unique") ? recorded.unique(4096) : recorded;
+        paths = components.pathBuilders();
+        identifiers = components.identifiers;
+        next = 0;
+    }
+
+    @Benchmark
+    public boolean filter() {
+        final int i = next;
+        next = i + 1 == paths.length ? 0 : i + 1;
+        return LithoFilterPatch.filter(paths[i], identifiers[i]);
+    }
+}
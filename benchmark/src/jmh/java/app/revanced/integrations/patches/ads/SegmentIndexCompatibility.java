@@ -0,0 +1,59 @@
+package app.revanced.integrations.patches.ads;
+
+import java.io.IOException;
+
+import app.revanced.integrations.settings.SettingsEnum;
+
+/**
+ * Replays the recorded components with every ad rule enabled, once with the substring matcher
+ * and once with the path segment index, and fails if any verdict differs.
+ * Components with differing rules but the same verdict are only reported.
+ * Run with: ./gradlew :benchmark:segmentIndexCompatibility
+ */
+public final class SegmentIndexCompatibility {
+    public static void main(String[] args) throws IOException {
+        for (SettingsEnum setting : SettingsEnum.values()) {
+            if (setting.name().startsWith("ADREMOVER_") && setting.getDefaultValue() instanceof Boolean) {
+                setting.setValue(true);
+            }
+        }
+        SettingsEnum.ADREMOVER_CUSTOM_FILTER.setValue("shopping_carousel, donation_shelf,_teaser,|ticket_,^statement_*");
+
+        LithoCorpus recorded = LithoCorpus.load();
+        LithoCorpus components = recorded.unique(recorded.size() * 4);
+
+        // Substring semantics.
+        SettingsEnum.ADREMOVER_SEGMENT_INDEX.setValue(false);
+        SettingsEnum.ADREMOVER_FILTER_TRACE.setValue(false);
+        boolean[] expected = filterAll(components);
+
+        // Path segment index only.
+        SettingsEnum.ADREMOVER_SEGMENT_INDEX.setValue(true);
+        boolean[] actual = filterAll(components);
+
+        // Compatibility mode, which counts the components with differing rules.
+        // Differing rules are expected where a rule matches inside a longer name,
+        // but they must not change any verdict.
+        SettingsEnum.ADREMOVER_FILTER_TRACE.setValue(true);
+        filterAll(components);
+
+        int differences = 0;
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] == actual[i]) continue;
+            differences++;
+            System.out.println("Verdict differs (substring " + expected[i] + "): " + components.paths[i]);
+        }
+        System.out.println(components.size() + " components, " + differences + " verdicts differ, "
+                + LithoFilterPatch.getSegmentIndexMismatches() + " with differing rules");
+
+        if (differences != 0) System.exit(1);
+    }
+
+    private static boolean[] filterAll(final LithoCorpus components) {
+        boolean[] verdicts = new boolean[components.size()];
+        for (int i = 0; i < verdicts.length; i++) {
+            verdicts[i] = LithoFilterPatch.filter(components.paths[i], components.identifiers[i]);
+        }
+        return verdicts;
+    }
+}
@@ -0,0 +1,15 @@
+package app.revanced.integrations.patches.utils;
+
+/**
+ * Stand-in for the app PatchStatus, with every patch included so all filter rules are benchmarked.
+ */
+public class PatchStatus {
+
+    public static boolean GeneralAds() {
+        return true;
+    }
+
+    public static boolean ShortsComponent() {
+        return true;
+    }
+}
@@ -0,0 +1,16 @@
+package app.revanced.integrations.patches.video;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Stand-in for the app FeedPrefetcher, which never prefetches, so the filters are measured without network requests.
+ */
+public final class FeedPrefetcher {
+
+    public static boolean isEnabled() {
+        return false;
+    }
+
+    public static void onFeedVideoComponent(ByteBuffer buffer) {
+    }
+}
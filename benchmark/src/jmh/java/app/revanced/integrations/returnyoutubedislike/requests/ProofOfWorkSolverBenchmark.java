@@ -0,0 +1,74 @@
+package app.revanced.integrations.returnyoutubedislike.requests;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Solves registration puzzles with {@link ProofOfWorkSolver}. Each operation solves one puzzle.
+ * The hashes counter is the number of hashes computed, so hashes per second is its rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProofOfWorkSolverBenchmark {
+    /**
+     * Zero bits required, the API currently asks for about 15.
+     */
+    @Param({"15", "18"})
+    public int difficulty;
+
+    @Param({"1", "2", "4"})
+    public int threads;
+
+    /**
+     * Same challenges for every run, as the time to solve depends on the challenge.
+     */
+    private byte[][] challenges;
+    private int next;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long hashes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            hashes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        challenges = new byte[64][16];
+        for (byte[] challenge : challenges) {
+            random.nextBytes(challenge);
+        }
+    }
+
+    @Benchmark
+    public byte[] solve(Counters counters) throws InterruptedException {
+        byte[] challenge = challenges[next];
+        next = (next + 1) % challenges.length;
+        ProofOfWorkSolver.Result result = ProofOfWorkSolver.solve(challenge, difficulty, threads);
+        counters.hashes += result.hashes;
+        return result.nonce;
+    }
+}
@@ -0,0 +1,102 @@
+package app.revanced.integrations.settings;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stand-in for the app SettingsEnum, so the filters run on a plain JVM.
+ * Only has the settings the benchmarked filters read, with the app defaults.
+ * Values are kept in memory only. Add a setting here when the filters use a new one.
+ */
+public enum SettingsEnum {
+    ADREMOVER_GENERAL_ADS(true),
+    ADREMOVER_PAID_CONTENT(true),
+    ADREMOVER_SELF_SPONSOR(true),
+    ADREMOVER_USER_FILTER(false),
+    ADREMOVER_CUSTOM_FILTER(""),
+    ADREMOVER_FILTER_TRACE(false),
+    ADREMOVER_SEGMENT_INDEX(false),
+    HIDE_SHORTS_SHELF(true),
+    HIDE_SHORTS_PLAYER_THANKS_BUTTON(true),
+    HIDE_SHORTS_PLAYER_PLAYER_SUBSCRIPTIONS_BUTTON(true),
+    HIDE_SHORTS_PLAYER_PLAYER_JOIN_BUTTON(true),
+    HIDE_MIX_PLAYLISTS(false),
+    ADREMOVER_MERCHANDISE(true),
+    ADREMOVER_BROWSE_STORE_BUTTON(true),
+    ADREMOVER_COMMUNITY_POSTS(false),
+    ADREMOVER_COMPACT_BANNER(true),
+    ADREMOVER_MOVIE_SHELF(false),
+    ADREMOVER_FEED_SURVEY(true),
+    ADREMOVER_IMAGE_SHELF(true),
+    ADREMOVER_COMMUNITY_GUIDELINES(true),
+    ADREMOVER_SUBSCRIBERS_COMMUNITY_GUIDELINES(true),
+    ADREMOVER_INFO_PANEL(true),
+    ADREMOVER_MEDICAL_PANEL(true),
+    ADREMOVER_SUGGESTIONS(false),
+    ADREMOVER_LATEST_POSTS(true),
+    ADREMOVER_CHANNEL_GUIDELINES(true),
+    ADREMOVER_CHANNEL_MEMBER_SHELF(true),
+    ADREMOVER_CHANNELBAR_JOIN_BUTTON(true),
+    ADREMOVER_CHAPTER_TEASER(true),
+    ADREMOVER_GRAY_SEPARATOR(true),
+    ADREMOVER_OFFICIAL_CARDS(true),
+    ADREMOVER_ALBUM_CARDS(true),
+    ADREMOVER_BREAKING_NEWS_SHELF(false),
+    ADREMOVER_WEB_SEARCH_PANEL(true),
+    ADREMOVER_TIMED_REACTIONS(false),
+    ADREMOVER_VIEW_PRODUCTS(true),
+    HIDE_LIKE_BUTTON(false),
+    HIDE_DISLIKE_BUTTON(false),
+    HIDE_SHARE_BUTTON(false),
+    HIDE_LIVE_CHAT_BUTTON(false),
+    HIDE_REPORT_BUTTON(false),
+    HIDE_CREATE_SHORT_BUTTON(false),
+    HIDE_THANKS_BUTTON(false),
+    HIDE_CREATE_CLIP_BUTTON(false),
+    HIDE_DOWNLOAD_BUTTON(false),
+    HIDE_PLAYLIST_BUTTON(false),
+    HIDE_COMMENTS_SECTION(false),
+    HIDE_PREVIEW_COMMENT(false),
+    HIDE_CAPTIONS_MENU(false),
+    HIDE_LOOP_MENU(false),
+    HIDE_AMBIENT_MENU(false),
+    HIDE_REPORT_MENU(false),
+    HIDE_HELP_MENU(false),
+    HIDE_MORE_MENU(false),
+    HIDE_LISTENING_CONTROLS_MENU(false),
+    HIDE_AUDIO_TRACK_MENU(false),
+    HIDE_WATCH_IN_VR_MENU(false),
+    HIDE_NERDS_MENU(false),
+    HIDE_YT_MUSIC_MENU(false);
+
+    private static final AtomicInteger changeCount = new AtomicInteger();
+
+    private final Object defaultValue;
+    private volatile Object value;
+
+    SettingsEnum(Object defaultValue) {
+        this.defaultValue = defaultValue;
+        this.value = defaultValue;
+    }
+
+    public static int getChangeCount() {
+        return changeCount.get();
+    }
+
+    public void setValue(Object newValue) {
+        this.value = newValue;
+        changeCount.incrementAndGet();
+    }
+
+    public String getString() {
+        return (String) value;
+    }
+
+    public boolean getBoolean() {
+        if (value == null) return (boolean) defaultValue;
+        else return (boolean) value;
+    }
+
+    public Object getDefaultValue() {
+        return defaultValue;
+    }
+}
@@ -0,0 +1,16 @@
+package app.revanced.integrations.utils;
+
+/**
+ * Stand-in for the app LogHelper, which discards all messages.
+ */
+public class LogHelper {
+
+    public static void printException(Class<?> clazz, String message, Throwable ex) {
+    }
+
+    public static void printException(Class<?> clazz, String message) {
+    }
+
+    public static void info(Class<?> clazz, String message) {
+    }
+}
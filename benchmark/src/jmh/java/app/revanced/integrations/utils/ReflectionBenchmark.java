@@ -0,0 +1,70 @@
+package app.revanced.integrations.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per call of reading the seekbar bounds field and invoking the seek method,
+ * looked up on every call as before, and through {@link ReflectionCache}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReflectionBenchmark {
+    /**
+     * Stand-in for the seekbar and the player controller.
+     */
+    public static class Seekbar {
+        private final int[] replaceMeWithsetSponsorBarRect = {0, 0, 1080, 12};
+        private long position;
+
+        public void seekTo(long millis) {
+            position = millis;
+        }
+    }
+
+    private final Seekbar seekbar = new Seekbar();
+    private final ReflectionCache.FieldAccessor rectField =
+            new ReflectionCache.FieldAccessor("replaceMeWithsetSponsorBarRect");
+    private final ReflectionCache.MethodAccessor seekMethod =
+            new ReflectionCache.MethodAccessor("seekTo", Long.TYPE);
+    private long millis;
+
+    @Benchmark
+    public Object fieldLookedUpEachCall() throws Exception {
+        Field field = seekbar.getClass().getDeclaredField("replaceMeWithsetSponsorBarRect");
+        field.setAccessible(true);
+        return field.get(seekbar);
+    }
+
+    @Benchmark
+    public Object fieldCached() throws Exception {
+        return rectField.get(seekbar);
+    }
+
+    @Benchmark
+    public Object methodLookedUpEachCall() throws Exception {
+        Method method = seekbar.getClass().getMethod("seekTo", Long.TYPE);
+        method.setAccessible(true);
+        return method.invoke(seekbar, millis++);
+    }
+
+    @Benchmark
+    public Object methodCached() throws Exception {
+        return seekMethod.invoke(seekbar, millis++);
+    }
+}
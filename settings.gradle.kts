@@ -8,4 +8,5 @@ dependencyResolutionManagement {
 }
 include(":app")
 include(":dummy")
+include(":benchmark")
 rootProject.name = "revanced-integrations"